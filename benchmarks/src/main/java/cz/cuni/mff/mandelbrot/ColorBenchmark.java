@@ -0,0 +1,63 @@
+package cz.cuni.mff.mandelbrot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures coloring of computed frame as done after every pass in GUI.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ColorBenchmark {
+
+    /**
+     * Computes the frame which is colored.
+     */
+    @Setup
+    public void setUp() {
+        Global.width = width;
+        Global.height = height;
+        set.setConstruct(Location.SEAHORSE.viewport(width, height), set.killThreads());
+    }
+
+    /**
+     * Colors the whole frame with cached palette.
+     */
+    @Benchmark
+    public void paint(Throughput throughput) {
+        painter.paint(set.getField(), set.getViewport(), 0, 0);
+        throughput.pixels += width * height;
+    }
+
+    /**
+     * Colors the whole frame after a slider moved, so the palette is built
+     * again.
+     */
+    @Benchmark
+    public void paintWithNewPalette(Throughput throughput) {
+        ControllerCode.RSlider_val = ControllerCode.RSlider_val == 1 ? 0.99 : 1;
+        painter.paint(set.getField(), set.getViewport(), 0, 0);
+        throughput.pixels += width * height;
+    }
+
+    private static int width = 1920, height = 1080;
+    private final Set set = new Set();
+    private final Painter painter = new Painter();
+}
@@ -0,0 +1,62 @@
+package cz.cuni.mff.mandelbrot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures computation of the whole canvas by all threads, including
+ * scheduling of tiles, progressive passes and antialiasing.
+ * The iterations are taken from the metrics of the computed frame.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class FrameBenchmark {
+
+    /**
+     * Creates the view of the size of canvas in GUI and turns cache off, so
+     * every frame is computed.
+     */
+    @Setup
+    public void setUp() {
+        viewport = location.viewport(width, height).withMarianiSilver(marianiSilver);
+        Set.getTileCache().setBudget(0);
+    }
+
+    /**
+     * Computes one frame.
+     */
+    @Benchmark
+    public void frame(Throughput throughput) {
+        set.setConstruct(viewport, set.killThreads());
+        throughput.pixels += width * height;
+        throughput.iterations += RenderMetrics.getLastFrame().iterations;
+    }
+
+    @Param({"HOME", "SEAHORSE", "INTERIOR", "DEEP"})
+    public Location location;
+
+    @Param({"false", "true"})
+    public boolean marianiSilver;
+
+    private static int width = 1200, height = 800;
+    private final Set set = new Set();
+    private Viewport viewport;
+}
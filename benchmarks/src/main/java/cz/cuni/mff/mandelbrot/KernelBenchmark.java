@@ -0,0 +1,92 @@
+package cz.cuni.mff.mandelbrot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures kernels computing single points in one thread.
+ * Every operation computes the centers of all pixels of a small canvas.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+
+    /**
+     * Sets the view and prepares positions of points.
+     */
+    @Setup
+    public void setUp() {
+        viewport = location.viewport(size, size);
+        iterations = viewport.iterations;
+
+        int length = Set.isVectorModulePresent() ? VectorKernel.paddedLength(size * size) : size * size;
+        x0 = new double[length];
+        y0 = new double[length];
+        n = new double[length];
+        nu = new double[length];
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                x0[i * size + j] = ((i + 0.5) / size) * viewport.sizeX + viewport.startPointX;
+                y0[i * size + j] = ((j + 0.5) / size) * viewport.sizeY - viewport.startPointY;
+            }
+        }
+        tempData = new double[size];
+    }
+
+    /**
+     * The scalar kernel with bulb test and periodicity checking.
+     */
+    @Benchmark
+    public void scalar(Throughput throughput) {
+        long[] work = {0};
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                tempData[j] = 0;
+                Set.ThreadSet.comPoint(viewport, i, j, 0.5, 0.5, iterations, tempData, null, 0, work);
+            }
+        }
+        throughput.pixels += size * size;
+        throughput.iterations += work[0];
+    }
+
+    /**
+     * The kernel using SIMD instructions.
+     *
+     * @throws IllegalStateException if the vector module is not present
+     */
+    @Benchmark
+    public void vector(Throughput throughput) {
+        if (!Set.isVectorModulePresent())
+            throw new IllegalStateException("Module jdk.incubator.vector is not present");
+        long total = VectorKernel.comPoints(x0, y0, size * size, iterations, viewport.getPeriodicityTolerance(),
+                n, nu);
+        throughput.pixels += size * size;
+        throughput.iterations += total;
+    }
+
+    @Param({"SEAHORSE", "INTERIOR"})
+    public Location location;
+
+    private static int size = 64;
+    private Viewport viewport;
+    private int iterations;
+    private double[] x0, y0, n, nu, tempData;
+}
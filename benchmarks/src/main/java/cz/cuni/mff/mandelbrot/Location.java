@@ -0,0 +1,51 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.math.BigDecimal;
+
+/**
+ * Reference views of the set used by benchmarks.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public enum Location {
+    /**
+     * The whole set as shown after start.
+     */
+    HOME("-0.5", "0", 1),
+    /**
+     * Seahorse valley, almost all points escape after many iterations.
+     */
+    SEAHORSE("-0.743643887037151", "0.13182590420533", 1000),
+    /**
+     * Interior of the period-3 minibrot, recognized only by periodicity.
+     */
+    INTERIOR("-1.7548776662466927", "0", 3000),
+    /**
+     * Seahorse valley below the precision of double, computed by perturbation.
+     */
+    DEEP("-0.743643887037158704752191506114774", "0.131825904205311970493132056385139",
+            1_000_000_000_000L);
+
+    Location(String re, String im, long zoom) {
+        this.re = re;
+        this.im = im;
+        this.zoom = zoom;
+    }
+
+    /**
+     * Creates viewport with the aspect ratio and iterations of GUI.
+     *
+     * @param width  width of canvas
+     * @param height height of canvas
+     * @return viewport of the location
+     */
+    Viewport viewport(int width, int height) {
+        double sizeX = Global.sizeOfZoom(zoom);
+        return new Viewport(new BigDecimal(re), new BigDecimal(im), sizeX, sizeX * height / width,
+                width, height, Global.countIterations(zoom));
+    }
+
+    private final String re, im;
+    private final long zoom;
+}
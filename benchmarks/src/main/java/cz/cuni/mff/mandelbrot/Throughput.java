@@ -0,0 +1,32 @@
+package cz.cuni.mff.mandelbrot;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts computed pixels and iterations, JMH reports them per second.
+ * Only iterations really computed are counted, points recognized by the bulb
+ * test or periodicity checking add no more iterations.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    /**
+     * Clears counters before every iteration of benchmark.
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+        pixels = 0;
+        iterations = 0;
+    }
+
+    public long pixels;
+    public long iterations;
+}
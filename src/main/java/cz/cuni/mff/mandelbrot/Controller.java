@@ -3,16 +3,22 @@ package cz.cuni.mff.mandelbrot;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Alert;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
 import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
 
 import java.net.URL;
 import java.text.NumberFormat;
 import java.util.ResourceBundle;
 
+import static java.lang.Math.max;
+
 /**
  * Controller class handles the GUI.
  * It controls every input from user from GUI. The following methods
@@ -29,7 +35,8 @@ public class Controller implements Initializable {
      * Initializes the controller.
      * Sets the default set size according to size of application window,
      * the text fields in GUI and sliders range and their listeners.
-     * Fills the canvas with the set with initial parameters.
+     * Fills the canvas with the set with initial parameters, the canvas is
+     * redrawn after every pass of computation.
      *
      * @param url initial param
      * @param rb  initial param
@@ -40,7 +47,9 @@ public class Controller implements Initializable {
         Global.height = (int) canvas.getHeight();
         Global.width = (int) canvas.getWidth();
 
-        Set.setConstruct();
+        renderService = new RenderService(this::showPass, this::showFailure);
+        painter = new Painter();
+        renderService.submit(RenderService.Request.full());
         textFieldIterations.setText(String.valueOf(Global.getIterations()));
         textFieldZoom.setText(String.valueOf(Global.getZoom()));
 
@@ -68,11 +77,10 @@ public class Controller implements Initializable {
             nf.setMaximumFractionDigits(0);
             nf.setGroupingUsed(false);
             long newZoom = ControllerCode.zoomBySlider(ZSlider.getValue());
+            zoomChanged = true;
             textFieldZoom.setText(nf.format(newZoom));
             textFieldIterations.setText(String.valueOf(Global.countIterations(newZoom)));
         });
-
-        fillCanvas();
     }
 
     /**
@@ -100,6 +108,7 @@ public class Controller implements Initializable {
             long zoom = Long.parseLong(textFieldZoom.getText());
             if (zoom < 1)
                 return;
+            zoomChanged = true;
             textFieldIterations.setText(String.valueOf(Global.countIterations(zoom)));
             ZSlider.setValue(ControllerCode.sliderByZoom(zoom));
             textFieldZoom.positionCaret(textFieldZoom.getText().length());
@@ -115,7 +124,6 @@ public class Controller implements Initializable {
      */
     @FXML
     public void canvasMouseDragged(MouseEvent mouseEvent) {
-        resetCanvas();
         ControllerCode.actualTranslationX += ControllerCode.mouse_lastX - (int) mouseEvent.getX();
         ControllerCode.actualTranslationY += ControllerCode.mouse_lastY - (int) mouseEvent.getY();
         fillDraggedCanvas();
@@ -124,65 +132,75 @@ public class Controller implements Initializable {
 
     /**
      * Reset actual position of mouse.
+     * Stops computing of the set, so the points are not changed while they are
+     * dragged.
      *
      * @param mouseEvent provides position of mouse on drag event
      */
     @FXML
     public void canvasOnMousePressed(MouseEvent mouseEvent) {
+        renderService.cancel();
         ControllerCode.upDateMouse(mouseEvent);
     }
 
     /**
      * Recompute the set according to actual translation.
+     * Already computed points are moved and only the uncovered part of the
+     * canvas is computed.
      */
     @FXML
     public void canvasOnMouseRelease() {
-        ControllerCode.addToAbsoluteTranslationAndNullActual();
-        Set.setConstruct();
-        fillCanvas();
+        int dx = ControllerCode.actualTranslationX, dy = ControllerCode.actualTranslationY;
+        renderService.submit(RenderService.Request.translated(dx, dy),
+                ControllerCode::addToAbsoluteTranslationAndNullActual);
     }
 
     /**
      * Provides zooming on scroll.
      * If scroll event occurs stop computing of the new set, sets zoom variable
-     * according to actual zoom and start computation of the new set.
+     * according to actual zoom and start computation of the new set. Rapid
+     * scrolling computes only the latest zoom. The canvas shows the last
+     * computed points rescaled until the first pass of the new computation.
+     * Zoom is rounded to a power of two and the center is aligned to the grid
+     * of the last computed sector, so its points are reused.
      *
      * @param scrollEvent provides actual value of scroll on scroll event
      */
     @FXML
     public void canvasOnScroll(ScrollEvent scrollEvent) {
-        Set.killThreads();
-        ControllerCode.actualZoom += scrollEvent.getDeltaY();
-        resetCanvas();
         textFieldZoom.setText(String.valueOf(Global.getZoom()));
-        ControllerCode.zoom();
+        renderService.submit(RenderService.Request.zoomed(), () -> {
+            ControllerCode.actualZoom += scrollEvent.getDeltaY();
+            ControllerCode.zoom();
+            ControllerCode.alignToGrid(renderService.getSet().getReusableViewport());
+        });
+        paintPreview();
         textFieldIterations.setText(String.valueOf(Global.countIterations()));
-        Set.setConstruct();
         ZSlider.setValue(ControllerCode.sliderByZoom(Global.getZoom()));
-        fillDraggedCanvas();
+        zoomChanged = false;
     }
 
     /**
      * Recompute the set on button press.
-     * It takes values from text fields.
+     * It takes values from text fields. The zoom is taken from its text field
+     * only if it was changed, so zoom deeper than the text field can hold is
+     * kept. If only the iterations changed, the points which reached the
+     * previous limit are continued.
      */
     @FXML
     public void buttonRedrawOnAction() {
-        long zoom = Long.parseLong(textFieldZoom.getText().replaceAll("\\s+", ""));
-        if (zoom < 1)
-            zoom = 1;
-        Global.setSize(zoom);
-
-        if (iterationsChanged) {
-            int it = Integer.parseInt(textFieldIterations.getText());
-            Global.setIterations(it);
-        }
-
-        Global.pointX = Double.parseDouble(textFieldRe.getText());
-        Global.pointY = Double.parseDouble(textFieldIm.getText());
-
-        Set.setConstruct();
-        fillCanvas();
+        long zoom = zoomChanged ? Long.parseLong(textFieldZoom.getText().replaceAll("\\s+", "")) : 0;
+        int it = iterationsChanged ? Integer.parseInt(textFieldIterations.getText()) : 0;
+        String re = textFieldRe.getText(), im = textFieldIm.getText();
+
+        boolean resumed = iterationsChanged && !zoomChanged;
+        renderService.submit(resumed ? RenderService.Request.resumed() : RenderService.Request.full(), () -> {
+            if (zoomChanged)
+                Global.setSize(max(zoom, 1));
+            if (iterationsChanged)
+                Global.setIterations(it);
+            Global.setPoint(re, im);
+        });
     }
 
     /**
@@ -190,34 +208,121 @@ public class Controller implements Initializable {
      * And sets right value of center of the set to the text fields.
      */
     private void fillCanvas() {
-        textFieldRe.setText(String.valueOf(Global.pointX));
-        textFieldIm.setText(String.valueOf(Global.pointY));
-
-        for (int i = 0; i < Global.width; ++i) {
-            for (int j = 0; j < Global.height; ++j) {
-                double realValue = Set.getValue(i, j);
-                ControllerCode.valueToColor(realValue);
-                canvas.getGraphicsContext2D().getPixelWriter().setColor(i, j, ControllerCode.valueToColor(realValue));
-            }
-        }
+        textFieldRe.setText(Global.precisePointX.toString());
+        textFieldIm.setText(Global.precisePointY.toString());
+        Viewport viewport = renderService.getShownViewport();
+        if (Global.autoIterations && viewport != null)
+            textFieldIterations.setText(String.valueOf(viewport.iterations));
+
+        paintCanvas(0, 0);
         iterationsChanged = false;
+        zoomChanged = false;
+    }
+
+    /**
+     * Fills canvas with the result of a pass of computation.
+     * Nothing is drawn while the set is dragged.
+     */
+    private void showPass() {
+        if (ControllerCode.actualTranslationX != 0 || ControllerCode.actualTranslationY != 0)
+            return;
+        fillCanvas();
+    }
+
+    /**
+     * Tells the user that computation of the set failed.
+     * The canvas keeps the last drawn pixels, the next change of the set
+     * starts a new computation. Repeated failures update the shown dialog
+     * instead of opening new ones.
+     *
+     * @param e the cause of failure
+     */
+    private void showFailure(RuntimeException e) {
+        String cause = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        if (failure == null) {
+            failure = new Alert(Alert.AlertType.ERROR);
+            failure.setHeaderText(null);
+        }
+        failure.setContentText("Computation of the set failed: " + cause);
+        if (!failure.isShowing())
+            failure.show();
     }
 
     /**
      * Fills canvas with translation.
+     * The uncovered part of canvas is filled with the color of background.
      */
     private void fillDraggedCanvas() {
-        for (int i = 0; i < Global.width; ++i) {
-            for (int j = 0; j < Global.height; ++j) {
-                double realValue = Set.getValueError(i + ControllerCode.actualTranslationX,
-                        j + ControllerCode.actualTranslationY);
-                if (realValue == -1)
-                    continue;
-
-                ControllerCode.valueToColor(realValue);
-                canvas.getGraphicsContext2D().getPixelWriter().setColor(i, j, ControllerCode.valueToColor(realValue));
-            }
-        }
+        paintCanvas(ControllerCode.actualTranslationX, ControllerCode.actualTranslationY);
+    }
+
+    /**
+     * Draws the last colored pixels rescaled to the actual sector.
+     */
+    private void paintPreview() {
+        painter.paintZoomed(Viewport.fromGlobal());
+        painter.draw(canvas.getGraphicsContext2D().getPixelWriter());
+        if (checkBoxStats.isSelected())
+            drawStats();
+    }
+
+    /**
+     * Colors points, draws them to canvas and measures both.
+     * If the statistics are shown, they are drawn over the pixels.
+     *
+     * @param dx translation in x axis in pixels
+     * @param dy translation in y axis in pixels
+     */
+    private void paintCanvas(int dx, int dy) {
+        RenderEvents.Paint event = new RenderEvents.Paint();
+        event.begin();
+        long start = System.nanoTime();
+        painter.paint(renderService.getShownField(), renderService.getShownViewport(), dx, dy);
+        long painted = System.nanoTime();
+        painter.draw(canvas.getGraphicsContext2D().getPixelWriter());
+        RenderMetrics.recordPaint(event, painted - start, System.nanoTime() - painted, Global.width * Global.height);
+        if (checkBoxStats.isSelected())
+            drawStats();
+    }
+
+    /**
+     * Draws metrics of the last frame in the corner of canvas.
+     */
+    private void drawStats() {
+        String[] lines = RenderMetrics.describe();
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFill(Color.rgb(0, 0, 0, 0.6));
+        gc.fillRect(0, 0, statsWidth, statsLineHeight * lines.length + statsLineHeight / 2);
+        gc.setFill(Color.WHITE);
+        gc.setFont(Font.font("Monospaced", 12));
+        for (int k = 0; k < lines.length; ++k)
+            gc.fillText(lines[k], 8, statsLineHeight * (k + 1));
+    }
+
+    /**
+     * Shows or hides the statistics of rendering over the set.
+     */
+    @FXML
+    public void checkBoxStatsOnAction() {
+        if (ControllerCode.actualTranslationX != 0 || ControllerCode.actualTranslationY != 0)
+            fillDraggedCanvas();
+        else
+            paintCanvas(0, 0);
+    }
+
+    /**
+     * Switches between automatic iterations and iterations given by the
+     * text field, which is disabled in the automatic mode. The set is computed
+     * again with the new limit.
+     */
+    @FXML
+    public void checkBoxAutoIterationsOnAction() {
+        boolean auto = checkBoxAutoIterations.isSelected();
+        textFieldIterations.setDisable(auto);
+        if (!auto)
+            textFieldIterations.setText(String.valueOf(Global.countIterations()));
+        iterationsChanged = false;
+        renderService.submit(RenderService.Request.full(), () -> Global.autoIterations = auto);
     }
 
     /**
@@ -228,7 +333,13 @@ public class Controller implements Initializable {
         canvas.getGraphicsContext2D().fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
     }
 
+    private static double statsWidth = 420, statsLineHeight = 16;
+
+    private Alert failure;
     private boolean iterationsChanged = false;
+    private Painter painter;
+    private RenderService renderService;
+    private boolean zoomChanged = false;
 
     @FXML
     private Canvas canvas;
@@ -256,4 +367,10 @@ public class Controller implements Initializable {
 
     @FXML
     private Slider ZSlider;
+
+    @FXML
+    private CheckBox checkBoxStats;
+
+    @FXML
+    private CheckBox checkBoxAutoIterations;
 }
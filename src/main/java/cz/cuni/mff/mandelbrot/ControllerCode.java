@@ -1,7 +1,6 @@
 package cz.cuni.mff.mandelbrot;
 
 import javafx.scene.input.MouseEvent;
-import javafx.scene.paint.Color;
 
 class ControllerCode {
     static int actualTranslationX = 0, actualTranslationY = 0;
@@ -14,8 +13,8 @@ class ControllerCode {
      * Function actualizes values of center of set on mouse release.
      */
     static void addToAbsoluteTranslationAndNullActual() {
-        Global.pointX += Global.sizeX * (actualTranslationX / (double) Global.width);
-        Global.pointY -= Global.sizeY * (actualTranslationY / (double) Global.height);
+        Global.movePoint(Global.sizeX * (actualTranslationX / (double) Global.width),
+                -Global.sizeY * (actualTranslationY / (double) Global.height));
 
         actualTranslationX = 0;
         actualTranslationY = 0;
@@ -46,7 +45,7 @@ class ControllerCode {
      * initial values.
      */
     static void zoom() {
-        double normZoom = getNormZoom();
+        double normZoom = powerOfTwo(getNormZoom());
         if (normZoom > 0) {
             Global.sizeX /= normZoom;
             Global.sizeY /= normZoom;
@@ -61,68 +60,49 @@ class ControllerCode {
     }
 
     /**
-     * Function gives real value of pixel and compute the RGB representation of this
-     * value.
-     * The function process 12 bits of integer part of pixel variable and place
-     * corresponding bits
-     * to designated places in output RGB variable.
-     * <p>
-     * The bits are placed by the following key:
-     * <p>
-     * 12 bits CBA_987_654_321
-     * <p>
-     * R = 0907_4321
-     * <p>
-     * G = 0B80_5321
-     * <p>
-     * B = C090_6321
+     * Rounds zoom of at least two times to the nearest power of two, so the
+     * points of the previous sector can be reused.
+     *
+     * @param normZoom normalized zoom, negative for zoom out
+     * @return the rounded zoom
      */
-    private static Color pixelToColor(double pixel) {
-        int normalizedValue = (int) pixel % Global.getIterations();
-        normalizedValue = (int) (normalizedValue / (double) Global.countIterations() * Global.numberOfColors);
-
-        if ((int) pixel == Global.countIterations())
-            return Color.rgb(0, 0, 0);
-
-        int R = (normalizedValue & 0b000_000_001_111) | // 0000_1111
-                ((normalizedValue & 0b000_001_000_000) >> 2) | // 0001_0000
-                ((normalizedValue & 0b000_100_000_000) >> 2); // 0100_0000
-
-        int G = (normalizedValue & 0b000_000_000_111) | // 0000_0111
-                ((normalizedValue & 0b000_000_010_000) >> 1) | // 0000_1000
-                ((normalizedValue & 0b000_010_000_000) >> 2) | // 0010_0000
-                ((normalizedValue & 0b010_000_000_000) >> 4); // 0100_0000
-
-        int B = (normalizedValue & 0b000_000_000_111) | // 0000_0111
-                ((normalizedValue & 0b000_000_100_000) >> 2) | // 0000_1000
-                ((normalizedValue & 0b000_100_000_000) >> 3) | // 0010_0000
-                ((normalizedValue & 0b100_000_000_000) >> 4); // 1000_0000
+    private static double powerOfTwo(double normZoom) {
+        double factor = Math.abs(normZoom);
+        if (factor < 2)
+            return normZoom;
+        int exponent = (int) Math.round(Math.log(factor) / Math.log(2));
+        return Math.copySign(Math.scalb(1.0, exponent), normZoom);
+    }
 
-        return Color.rgb(B, G, R);
+    /**
+     * Moves center of the set by less than a pixel, so the pixels of the
+     * sector zoomed by a power of two lie on the grid of the previous sector.
+     *
+     * @param previous the sector whose points may be reused, may be null
+     * @see Set#setConstructZoomed(Viewport, long)
+     */
+    static void alignToGrid(Viewport previous) {
+        Viewport viewport = Viewport.fromGlobal();
+        if (viewport.scaleExponent(previous) == 0)
+            return;
+        double[] offset = viewport.gridOffset(previous);
+        double pixelX = Math.min(viewport.sizeX, previous.sizeX) / viewport.width;
+        double pixelY = Math.min(viewport.sizeY, previous.sizeY) / viewport.height;
+        Global.movePoint((Math.rint(offset[0]) - offset[0]) * pixelX, (offset[1] - Math.rint(offset[1])) * pixelY);
     }
 
     /**
-     * Computes color of pixel.
-     * Firstly it gets two colors and then it chooses an color between them using
-     * linear interpolation. Linear interpolation result depends on decimal part of
-     * <code>pixel</code> variable.
+     * Returns palette for given number of iterations and actual sliders.
+     * The palette is built again only if any of them changed.
      *
-     * @param pixel the value represents pixel computed by definition of mandelbrot
-     *              set
-     * @return the color representing the value of <code>pixel</code>
+     * @param iterations number of iterations the points were computed with
+     * @return palette coloring the computed points
      */
-    static Color valueToColor(double pixel) {
-        Color color1 = ControllerCode.pixelToColor(pixel);
-        Color color2 = ControllerCode.pixelToColor(pixel + 1);
-
-        double dif = pixel - (int) pixel;
-        double R = ((color2.getRed() - color1.getRed()) * (dif));
-        double B = ((color2.getBlue() - color1.getBlue()) * (dif));
-        double G = ((color2.getGreen() - color1.getGreen()) * (dif));
-
-        return Color.rgb((int) ((color1.getRed() + R) * 255 * RSlider_val),
-                (int) ((color1.getGreen() + G) * 255 * GSlider_val),
-                (int) ((color1.getBlue() + B) * 255 * BSlider_val));
+    static Palette getPalette(int iterations) {
+        int baseIterations = Global.getIterations();
+        if (palette == null || !palette.matches(iterations, baseIterations, RSlider_val, GSlider_val, BSlider_val))
+            palette = new Palette(iterations, baseIterations, RSlider_val, GSlider_val, BSlider_val);
+        return palette;
     }
 
     /**
@@ -146,5 +126,6 @@ class ControllerCode {
     static double RSlider_val = 1;
     static double GSlider_val = 1;
     static double BSlider_val = 1;
+    private static Palette palette;
 
 }
@@ -0,0 +1,537 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Math.*;
+
+/**
+ * Renders the set to PNG file on {@link Worker} processes.
+ * The image is split into square tiles, each of them is computed with one
+ * more pixel on every side, so the antialiasing finds the neighbours of its
+ * border points. Every worker has a few connections taking tiles from one
+ * queue, so faster workers compute more tiles. Colored rows of tiles are
+ * written to the file in order while the next ones are computed, only a
+ * window of rows is dispatched at once to bound the memory.
+ * <p>
+ * A tile whose worker failed is given to another connection, the failed
+ * connection reconnects and gives up after several failures in a row. When
+ * the queue is empty, idle connections compute again the tiles running much
+ * longer than the average tile on another worker, the first result is used.
+ * <p>
+ * Usage: <code>Coordinator re im zoom iterations WIDTHxHEIGHT file.png workers [samples]</code>,
+ * where workers are either addresses <code>host:port</code> separated by
+ * commas or the number of worker processes started on this machine.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class Coordinator {
+
+    /**
+     * Parses arguments, starts local workers if requested and renders the
+     * image.
+     *
+     * @param args center, zoom, iterations, size of image, output file,
+     *             workers and optionally number of samples
+     */
+    public static void main(String[] args) {
+        List<Process> processes = new ArrayList<>();
+        try {
+            if (args.length != 7 && args.length != 8)
+                throw new IllegalArgumentException("Wrong number of arguments");
+            String[] size = args[4].toLowerCase().split("x");
+            if (size.length != 2)
+                throw new IllegalArgumentException("Size has to be given as WIDTHxHEIGHT");
+            int width = Integer.parseInt(size[0]), height = Integer.parseInt(size[1]);
+            if (width < 1 || height < 1)
+                throw new IllegalArgumentException("Size has to be positive");
+            long zoom = Long.parseLong(args[2]);
+            if (zoom < 1)
+                throw new IllegalArgumentException("Zoom has to be positive");
+            int iterations = Integer.parseInt(args[3]);
+            if (iterations < 1)
+                throw new IllegalArgumentException("Iterations have to be positive");
+            int samples = args.length == 8 ? Integer.parseInt(args[7]) : Global.getSamples();
+
+            List<InetSocketAddress> workers = new ArrayList<>();
+            if (args[6].matches("\\d+"))
+                startWorkers(Integer.parseInt(args[6]), workers, processes);
+            else
+                for (String address : args[6].split(","))
+                    workers.add(parseAddress(address));
+
+            long start = System.nanoTime();
+            Coordinator coordinator = new Coordinator(args[0], args[1], zoom, iterations, width, height,
+                    samples);
+            coordinator.render(workers, Paths.get(args[5]));
+            System.err.printf("Rendered in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Coordinator re im zoom iterations WIDTHxHEIGHT file.png workers [samples]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Rendering failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            for (Process process : processes)
+                process.destroy();
+        }
+    }
+
+    /**
+     * Splits the image into tiles.
+     * The zoom has the same meaning as in GUI, see {@link Export}.
+     *
+     * @param re         real part of center
+     * @param im         imaginary part of center
+     * @param zoom       zoom of image
+     * @param iterations number of iterations
+     * @param width      width of image
+     * @param height     height of image
+     * @param samples    number of samples computed in one pixel
+     * @throws IllegalArgumentException if the number of samples is not supported
+     */
+    Coordinator(String re, String im, long zoom, int iterations, int width, int height, int samples) {
+        this.width = width;
+        this.height = height;
+        BigDecimal centerX = new BigDecimal(re.trim()), centerY = new BigDecimal(im.trim());
+        double sizeX = Global.sizeOfZoom(zoom), pixel = sizeX / width;
+        MathContext mc = new Viewport(centerX, centerY, sizeX, pixel * height, width, height, iterations)
+                .getPrecision();
+        palette = new Palette(iterations, Global.baseIterations(iterations, zoom), 1, 1, 1);
+        window = max(2, windowPoints / ((long) width * tileSize));
+
+        strips = new Strip[(height + tileSize - 1) / tileSize];
+        long id = 0;
+        for (int k = 0; k < strips.length; ++k) {
+            int top = k * tileSize, rows = min(tileSize, height - top);
+            strips[k] = new Strip(rows);
+            for (int left = 0; left < width; left += tileSize) {
+                int columns = min(tileSize, width - left);
+                int marginLeft = left > 0 ? 1 : 0, marginTop = top > 0 ? 1 : 0;
+                int computedColumns = marginLeft + columns + (left + columns < width ? 1 : 0);
+                int computedRows = marginTop + rows + (top + rows < height ? 1 : 0);
+                double shiftX = (left - marginLeft) + computedColumns / 2.0 - width / 2.0;
+                double shiftY = height / 2.0 - (top - marginTop) - computedRows / 2.0;
+                Viewport viewport = new Viewport(centerX.add(new BigDecimal(shiftX * pixel), mc),
+                        centerY.add(new BigDecimal(shiftY * pixel), mc), pixel * computedColumns,
+                        pixel * computedRows, computedColumns, computedRows, iterations)
+                        .withSampling(samples, Global.adaptiveSampling, Global.samplingThreshold);
+                pending.add(new Task(id++, k, left, columns, rows, marginLeft, marginTop, viewport));
+                strips[k].remaining++;
+            }
+        }
+    }
+
+    /**
+     * Renders the image on workers and writes it.
+     *
+     * @param workers addresses of workers
+     * @param file    output file
+     * @throws IOException if writing fails or tiles cannot be computed
+     */
+    void render(List<InetSocketAddress> workers, Path file) throws IOException {
+        if (workers.isEmpty())
+            throw new IllegalArgumentException("No workers given");
+        List<Connection> connections = new ArrayList<>();
+        for (int w = 0; w < workers.size(); ++w)
+            for (int c = 0; c < connectionsPerWorker; ++c)
+                connections.add(new Connection(w, workers.get(w)));
+        ExecutorService threads = Executors.newFixedThreadPool(connections.size());
+        live = connections.size();
+
+        try (PngWriter png = new PngWriter(new BufferedOutputStream(Files.newOutputStream(file)), width, height)) {
+            connections.forEach(threads::execute);
+            for (int k = 0; k < strips.length; ++k) {
+                png.writeRows(awaitStrip(k), 0, strips[k].rows);
+                synchronized (this) {
+                    strips[k].colors = null;
+                    ++written;
+                    notifyAll();
+                }
+                System.err.printf("\r%d of %d rows", min((k + 1) * tileSize, height), height);
+            }
+            System.err.println();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Rendering was interrupted", e);
+        } finally {
+            synchronized (this) {
+                if (failure == null && written < strips.length)
+                    failure = new IOException("Rendering was stopped");
+                notifyAll();
+            }
+            threads.shutdownNow();
+            for (Connection connection : connections)
+                connection.close();
+            try {
+                threads.awaitTermination(connectTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (int w = 0; w < workers.size(); ++w) {
+            int tiles = 0, failures = 0;
+            for (Connection connection : connections) {
+                if (connection.worker == w) {
+                    tiles += connection.tiles;
+                    failures += connection.failures;
+                }
+            }
+            System.err.printf("%s: %d tiles, %d failures%n", workers.get(w), tiles, failures);
+        }
+        System.err.printf("%d tiles retried, %d computed again as slow%n", retried, speculated);
+    }
+
+    /**
+     * Waits until all tiles of strip are colored.
+     *
+     * @param k index of strip
+     * @return colors of the strip
+     * @throws IOException          if the rendering failed
+     * @throws InterruptedException if the thread was interrupted
+     */
+    private synchronized int[] awaitStrip(int k) throws IOException, InterruptedException {
+        while (strips[k].remaining > 0 && failure == null)
+            wait();
+        if (strips[k].remaining > 0)
+            throw failure;
+        return strips[k].colors;
+    }
+
+    /**
+     * Takes the next tile for connection.
+     * If no tile is waiting in the window, a slow tile running on another
+     * worker is returned.
+     *
+     * @param connection idle connection
+     * @return the tile or null if the rendering ended
+     * @throws InterruptedException if the thread was interrupted
+     */
+    private synchronized Task next(Connection connection) throws InterruptedException {
+        while (failure == null && written < strips.length) {
+            Task task = pending.peekFirst();
+            if (task != null && task.strip < written + window) {
+                pending.pollFirst();
+                return start(task, connection);
+            }
+            task = findSlow(connection);
+            if (task != null) {
+                ++speculated;
+                return start(task, connection);
+            }
+            wait(pollInterval);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the oldest tile running longer than several average tiles on
+     * another worker and not computed again yet.
+     *
+     * @param connection idle connection
+     * @return the tile or null if there is none
+     */
+    private Task findSlow(Connection connection) {
+        if (completed == 0)
+            return null;
+        long now = System.nanoTime();
+        for (Task task : running) {
+            if (task.running == 1 && task.worker != connection.worker
+                    && now - task.started > slowFactor * completedTime / completed)
+                return task;
+        }
+        return null;
+    }
+
+    /**
+     * Marks the tile as running on connection.
+     */
+    private Task start(Task task, Connection connection) {
+        if (task.running++ == 0) {
+            task.started = System.nanoTime();
+            task.worker = connection.worker;
+            running.add(task);
+        }
+        if (strips[task.strip].colors == null)
+            strips[task.strip].colors = new int[width * strips[task.strip].rows];
+        return task;
+    }
+
+    /**
+     * Colors the computed tile, unless another connection was faster.
+     *
+     * @param task  the tile
+     * @param field computed points of the tile
+     * @param time  time of computation in nanoseconds
+     */
+    private void complete(Task task, Field field, long time) {
+        int[] colors;
+        synchronized (this) {
+            --task.running;
+            if (task.done)
+                return;
+            task.done = true;
+            running.remove(task);
+            completedTime += time;
+            ++completed;
+            colors = strips[task.strip].colors;
+        }
+        for (int j = 0; j < task.rows; ++j)
+            for (int i = 0; i < task.columns; ++i)
+                colors[j * width + task.left + i] = palette.toArgb(field.get(i + task.marginLeft, j + task.marginTop));
+        synchronized (this) {
+            if (--strips[task.strip].remaining == 0)
+                notifyAll();
+        }
+    }
+
+    /**
+     * Returns the tile to the front of queue, unless it is still running on
+     * another connection. The rendering fails if the tile failed too many
+     * times.
+     *
+     * @param task  the tile
+     * @param cause failure of the connection
+     */
+    private synchronized void fail(Task task, IOException cause) {
+        --task.running;
+        if (task.done || task.running > 0)
+            return;
+        running.remove(task);
+        if (++task.attempts >= maxAttempts) {
+            failure = new IOException("Tile failed " + task.attempts + " times", cause);
+        } else {
+            ++retried;
+            pending.addFirst(task);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Removes connection which gave up, the rendering fails when it was the
+     * last one.
+     */
+    private synchronized void retire() {
+        if (--live == 0 && failure == null && written < strips.length)
+            failure = new IOException("All workers failed");
+        notifyAll();
+    }
+
+    /**
+     * Starts worker processes on this machine with the same classes.
+     * Their error output goes to the error output of this process.
+     *
+     * @param count     number of workers
+     * @param addresses list for addresses of started workers
+     * @param processes list for started processes
+     * @throws IOException if any of workers cannot be started
+     */
+    private static void startWorkers(int count, List<InetSocketAddress> addresses, List<Process> processes)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        if (Set.isVectorModulePresent()) {
+            command.add("--add-modules");
+            command.add("jdk.incubator.vector");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Worker.class.getName());
+
+        for (int k = 0; k < count; ++k) {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            processes.add(process);
+            BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8));
+            String line = out.readLine();
+            if (line == null)
+                throw new IOException("Worker did not start");
+            String[] words = line.split(" ");
+            addresses.add(new InetSocketAddress("localhost", Integer.parseInt(words[words.length - 1])));
+        }
+    }
+
+    /**
+     * @param address address in form <code>host:port</code>
+     * @return the address
+     * @throws IllegalArgumentException if the address is not valid
+     */
+    private static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0)
+            throw new IllegalArgumentException("Worker has to be given as host:port");
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    /**
+     * One tile of image.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    private static class Task {
+
+        private Task(long id, int strip, int left, int columns, int rows, int marginLeft, int marginTop,
+                Viewport viewport) {
+            this.id = id;
+            this.strip = strip;
+            this.left = left;
+            this.columns = columns;
+            this.rows = rows;
+            this.marginLeft = marginLeft;
+            this.marginTop = marginTop;
+            this.viewport = viewport;
+        }
+
+        private final long id;
+        private final int strip, left, columns, rows, marginLeft, marginTop;
+        private final Viewport viewport;
+        private int attempts, running, worker;
+        private long started;
+        private boolean done;
+    }
+
+    /**
+     * One row of tiles, colored rows of pixels are kept until written.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    private static class Strip {
+
+        private Strip(int rows) {
+            this.rows = rows;
+        }
+
+        private final int rows;
+        private int remaining;
+        private int[] colors;
+    }
+
+    /**
+     * One connection to worker computing one tile after another.
+     * It connects again after failure and gives up after several failures in
+     * a row.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    private class Connection implements Runnable {
+
+        private Connection(int worker, InetSocketAddress address) {
+            this.worker = worker;
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            int failuresInRow = 0;
+            try {
+                Task task;
+                while ((task = next(this)) != null) {
+                    long start = System.nanoTime();
+                    try {
+                        if (socket == null)
+                            connect();
+                        Worker.writeRequest(out, task.id, task.viewport);
+                        Field field = Worker.readResult(in, task.id, task.viewport.width, task.viewport.height);
+                        complete(task, field, System.nanoTime() - start);
+                        ++tiles;
+                        failuresInRow = 0;
+                    } catch (IOException e) {
+                        close();
+                        fail(task, e);
+                        ++failures;
+                        if (++failuresInRow >= maxFailures)
+                            return;
+                        Thread.sleep(reconnectDelay * failuresInRow);
+                    }
+                }
+            } catch (InterruptedException ignored) {
+                // the rendering ended
+            } finally {
+                close();
+                retire();
+            }
+        }
+
+        /**
+         * Opens the connection.
+         *
+         * @throws IOException if the worker is not reachable
+         */
+        private synchronized void connect() throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(tileTimeout);
+            socket.connect(address, connectTimeout);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Closes the connection, a blocked read fails.
+         */
+        private synchronized void close() {
+            if (socket == null)
+                return;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+            socket = null;
+        }
+
+        private final int worker;
+        private final InetSocketAddress address;
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+        private int tiles, failures;
+    }
+
+    private static int tileSize = 256;
+    private static long windowPoints = 1 << 24;
+    private static int connectionsPerWorker = 2;
+    private static int maxAttempts = 5;
+    private static int maxFailures = 5;
+    private static int slowFactor = 4;
+    private static long pollInterval = 100;
+    private static long reconnectDelay = 500;
+    private static int connectTimeout = 5000;
+    private static int tileTimeout = 600_000;
+
+    private final int width, height;
+    private final long window;
+    private final Palette palette;
+    private final Strip[] strips;
+    private final Deque<Task> pending = new ArrayDeque<>();
+    private final List<Task> running = new ArrayList<>();
+    private int written, live, retried, speculated;
+    private long completed, completedTime;
+    private IOException failure;
+}
@@ -0,0 +1,241 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.*;
+
+/**
+ * Renders the set to PNG file without GUI.
+ * The image is computed in horizontal strips, each strip on all cores. Every
+ * strip is computed with one more row on both sides, so the antialiasing finds
+ * the neighbours of its border rows. Colored strips are compressed by another
+ * thread while the next strip is computed, so only a few strips are in memory
+ * at once and the size of image is limited only by the disk.
+ * <p>
+ * Usage: <code>Export re im zoom iterations WIDTHxHEIGHT file.png [samples]</code>, the points
+ * are stored instead of colors if the file ends with <code>.field</code>. The
+ * iterations may be <code>auto</code>, see {@link IterationProbe}.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class Export {
+
+    /**
+     * Parses arguments and renders the image.
+     *
+     * @param args center, zoom, iterations, size of image, output file and
+     *             optionally number of samples
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length != 6 && args.length != 7)
+                throw new IllegalArgumentException("Wrong number of arguments");
+            String[] size = args[4].toLowerCase().split("x");
+            if (size.length != 2)
+                throw new IllegalArgumentException("Size has to be given as WIDTHxHEIGHT");
+            int width = Integer.parseInt(size[0]), height = Integer.parseInt(size[1]);
+            if (width < 1 || height < 1)
+                throw new IllegalArgumentException("Size has to be positive");
+            long zoom = Long.parseLong(args[2]);
+            if (zoom < 1)
+                throw new IllegalArgumentException("Zoom has to be positive");
+            int samples = args.length == 7 ? Integer.parseInt(args[6]) : Global.getSamples();
+
+            long start = System.nanoTime();
+            int iterations;
+            if (args[3].equals("auto")) {
+                iterations = chooseIterations(args[0], args[1], zoom, width, height);
+                System.err.println("Using " + iterations + " iterations");
+            } else {
+                iterations = Integer.parseInt(args[3]);
+            }
+            render(args[0], args[1], zoom, iterations, width, height, samples, Paths.get(args[5]));
+            System.err.printf("Rendered in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Export re im zoom iterations WIDTHxHEIGHT file.png [samples]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Renders the image.
+     * The zoom has the same meaning as in GUI, the width of image shows
+     * the same part of the set as the width of canvas. If the name of file
+     * ends with {@link FieldFile#EXTENSION}, the values of points are stored
+     * instead of colors, so they can be colored later by {@link Recolor}.
+     *
+     * @param re         real part of center
+     * @param im         imaginary part of center
+     * @param zoom       zoom of image
+     * @param iterations number of iterations
+     * @param width      width of image
+     * @param height     height of image
+     * @param samples    number of samples computed in one pixel
+     * @param file       output file
+     * @throws IOException if writing fails
+     */
+    static void render(String re, String im, long zoom, int iterations, int width, int height,
+            int samples, Path file) throws IOException {
+        BigDecimal centerX = new BigDecimal(re.trim()), centerY = new BigDecimal(im.trim());
+        double sizeX = Global.sizeOfZoom(zoom), pixel = sizeX / width;
+        Viewport whole = new Viewport(centerX, centerY, sizeX, pixel * height, width, height, iterations)
+                .withSampling(samples, Global.adaptiveSampling, Global.samplingThreshold);
+        int baseIterations = Global.baseIterations(iterations, zoom);
+
+        if (file.toString().endsWith(FieldFile.EXTENSION)) {
+            try (FieldFile out = FieldFile.create(file, whole, baseIterations)) {
+                computeStrips(whole, out.getMaxRows(), out::write);
+            }
+            return;
+        }
+
+        Palette palette = new Palette(iterations, baseIterations, 1, 1, 1);
+        int[][] colors = {new int[width * stripRows(width)], new int[width * stripRows(width)]};
+        ExecutorService encoder = Executors.newSingleThreadExecutor();
+        try (PngWriter png = new PngWriter(new BufferedOutputStream(Files.newOutputStream(file)), width, height)) {
+            Future<?>[] pending = {null};
+            computeStrips(whole, Integer.MAX_VALUE, (field, firstRow, top, rows) -> {
+                int[] stripColors = colors[top / stripRows(width) % 2];
+                color(palette, field, stripColors, firstRow, rows);
+
+                await(pending[0]);
+                pending[0] = encoder.submit(() -> {
+                    png.writeRows(stripColors, 0, rows);
+                    return null;
+                });
+            });
+            await(pending[0]);
+        } finally {
+            encoder.shutdown();
+        }
+    }
+
+    /**
+     * Chooses the number of iterations by {@link IterationProbe}.
+     *
+     * @param re     real part of center
+     * @param im     imaginary part of center
+     * @param zoom   zoom of image
+     * @param width  width of image
+     * @param height height of image
+     * @return number of iterations
+     */
+    private static int chooseIterations(String re, String im, long zoom, int width, int height) {
+        double sizeX = Global.sizeOfZoom(zoom);
+        return IterationProbe.choose(new Viewport(new BigDecimal(re.trim()), new BigDecimal(im.trim()),
+                sizeX, sizeX * height / width, width, height, Global.countIterations(zoom))).iterations;
+    }
+
+    /**
+     * Computes the image strip after strip and passes the strips to consumer.
+     * Every strip is computed with one more row on both sides.
+     *
+     * @param whole   the whole image
+     * @param maxRows maximal number of rows of strip
+     * @param output  consumer of computed strips
+     * @throws IOException if the consumer fails
+     */
+    private static void computeStrips(Viewport whole, int maxRows, StripConsumer output) throws IOException {
+        int width = whole.width, height = whole.height;
+        double pixel = whole.getPixel();
+        MathContext mc = whole.getPrecision();
+        Set set = new Set();
+        set.setAside(true);
+        int strip = min(stripRows(width), maxRows);
+        for (int top = 0; top < height; top += strip) {
+            int rows = min(strip, height - top);
+            int above = top > 0 ? 1 : 0, below = top + rows < height ? 1 : 0;
+            int computed = above + rows + below;
+            double shift = height / 2.0 - (top - above) - computed / 2.0;
+            Viewport viewport = new Viewport(whole.centerX, whole.centerY.add(new BigDecimal(shift * pixel), mc),
+                    whole.sizeX, pixel * computed, width, computed, whole.iterations)
+                    .withSampling(whole.samples, whole.adaptiveSampling, whole.samplingThreshold);
+            set.setConstruct(viewport, set.killThreads());
+            output.accept(set.getField(), above, top, rows);
+            System.err.printf("\r%d of %d rows", top + rows, height);
+        }
+        System.err.println();
+    }
+
+    /**
+     * @param width width of image
+     * @return number of rows of one strip
+     */
+    private static int stripRows(int width) {
+        return max(1, stripPoints / width);
+    }
+
+    /**
+     * Colors computed rows of points in parallel.
+     *
+     * @param palette  colors of points
+     * @param field    computed points
+     * @param colors   array for colors packed as <code>0xAARRGGBB</code>
+     * @param firstRow the first colored row of points
+     * @param rows     number of rows
+     */
+    static void color(Palette palette, Field field, int[] colors, int firstRow, int rows) {
+        int width = field.getWidth();
+        IntStream.range(0, rows).parallel().forEach(j -> {
+            for (int i = 0; i < width; ++i)
+                colors[j * width + i] = palette.toArgb(field.get(i, j + firstRow));
+        });
+    }
+
+    /**
+     * Waits until the strip is written.
+     *
+     * @param pending writing of strip, may be null
+     * @throws IOException if writing failed
+     */
+    private static void await(Future<?> pending) throws IOException {
+        if (pending == null)
+            return;
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException("Writing of image failed", e.getCause());
+        }
+    }
+
+    /**
+     * Takes computed strips of image.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    private interface StripConsumer {
+
+        /**
+         * @param field    computed points of strip
+         * @param firstRow the first row of field belonging to strip
+         * @param top      index of the first row of strip in image
+         * @param rows     number of rows of strip
+         * @throws IOException if the strip cannot be written
+         */
+        void accept(Field field, int firstRow, int top, int rows) throws IOException;
+    }
+
+    private static int stripPoints = 1 << 22;
+}
@@ -0,0 +1,190 @@
+package cz.cuni.mff.mandelbrot;
+
+import static java.lang.Math.*;
+
+/**
+ * Holds computed values of all points of the canvas.
+ * The value of point is stored as the whole number of iterations and its
+ * fractional part used in linear approximation of color. Both are kept in flat
+ * arrays ordered by rows, so one buffer serves all computations and it is
+ * allocated again only when the size of canvas changes.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class Field {
+
+    /**
+     * Makes the field fit the canvas of given size.
+     * The values are kept if the size did not change, otherwise they are lost.
+     *
+     * @param width  width of canvas
+     * @param height height of canvas
+     * @return true if the buffer was allocated again
+     */
+    boolean resize(int width, int height) {
+        if (counts != null && this.width == width && this.height == height)
+            return false;
+        this.width = width;
+        this.height = height;
+        counts = new int[width * height];
+        fractions = new float[width * height];
+        return true;
+    }
+
+    /**
+     * @return true if the field has the given size
+     */
+    boolean hasSize(int width, int height) {
+        return counts != null && this.width == width && this.height == height;
+    }
+
+    /**
+     * @return width of canvas
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of canvas
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Stores the value of point.
+     *
+     * @param i        x coordinates
+     * @param j        y coordinates
+     * @param count    whole number of iterations
+     * @param fraction fractional part of value
+     */
+    void set(int i, int j, int count, double fraction) {
+        int index = j * width + i;
+        counts[index] = count;
+        fractions[index] = (float) fraction;
+    }
+
+    /**
+     * Return the value of point.
+     *
+     * @param i x coordinates
+     * @param j y coordinates
+     * @return value of point at given coordinates
+     */
+    double get(int i, int j) {
+        int index = j * width + i;
+        return counts[index] + fractions[index];
+    }
+
+    /**
+     * Return the whole number of iterations of point.
+     *
+     * @param index index of point in rows
+     * @return number of iterations
+     */
+    int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Copies the value of point from another field of the same size.
+     *
+     * @param source the field
+     * @param from   index of point in rows of the source
+     * @param to     index of point in rows of this field
+     */
+    void copy(Field source, int from, int to) {
+        counts[to] = source.counts[from];
+        fractions[to] = source.fractions[from];
+    }
+
+    /**
+     * Copies all values from another field, resizing this one if needed.
+     *
+     * @param source the field
+     */
+    void copyFrom(Field source) {
+        resize(source.width, source.height);
+        System.arraycopy(source.counts, 0, counts, 0, counts.length);
+        System.arraycopy(source.fractions, 0, fractions, 0, fractions.length);
+    }
+
+    /**
+     * Copies the value of point to the rectangle of points.
+     *
+     * @param i         x coordinates of copied point
+     * @param j         y coordinates of copied point
+     * @param endColumn first column behind the rectangle
+     * @param endRow    first row behind the rectangle
+     */
+    void fill(int i, int j, int endColumn, int endRow) {
+        int index = j * width + i;
+        int count = counts[index];
+        float fraction = fractions[index];
+        for (int l = j; l < endRow; ++l) {
+            int row = l * width;
+            for (int k = i; k < endColumn; ++k) {
+                counts[row + k] = count;
+                fractions[row + k] = fraction;
+            }
+        }
+    }
+
+    /**
+     * Copies values of rectangle of points to given arrays.
+     *
+     * @param i         x coordinates of the first point
+     * @param j         y coordinates of the first point
+     * @param columns   width of rectangle
+     * @param rows      height of rectangle
+     * @param counts    array for whole numbers of iterations
+     * @param fractions array for fractional parts of values
+     * @param offset    index of the first point in arrays
+     * @param stride    distance of rows in arrays
+     */
+    void read(int i, int j, int columns, int rows, int[] counts, float[] fractions, int offset, int stride) {
+        for (int l = 0; l < rows; ++l) {
+            int index = (j + l) * width + i;
+            System.arraycopy(this.counts, index, counts, offset + l * stride, columns);
+            System.arraycopy(this.fractions, index, fractions, offset + l * stride, columns);
+        }
+    }
+
+    /**
+     * Copies values of rectangle of points from given arrays.
+     *
+     * @see #read(int, int, int, int, int[], float[], int, int)
+     */
+    void write(int i, int j, int columns, int rows, int[] counts, float[] fractions, int offset, int stride) {
+        for (int l = 0; l < rows; ++l) {
+            int index = (j + l) * width + i;
+            System.arraycopy(counts, offset + l * stride, this.counts, index, columns);
+            System.arraycopy(fractions, offset + l * stride, this.fractions, index, columns);
+        }
+    }
+
+    /**
+     * Translates all values, the point at <code>[i + dx][j + dy]</code> lands
+     * at <code>[i][j]</code>.
+     * The points uncovered by the translation hold meaningless values and have
+     * to be computed again.
+     *
+     * @param dx translation in x axis in pixels
+     * @param dy translation in y axis in pixels
+     */
+    void translate(int dx, int dy) {
+        int shift = dy * width + dx;
+        int length = counts.length - abs(shift);
+        if (length <= 0)
+            return;
+        System.arraycopy(counts, max(shift, 0), counts, max(-shift, 0), length);
+        System.arraycopy(fractions, max(shift, 0), fractions, max(-shift, 0), length);
+    }
+
+    private int width, height;
+    private int[] counts;
+    private float[] fractions;
+}
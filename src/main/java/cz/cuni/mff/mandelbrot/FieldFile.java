@@ -0,0 +1,239 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores computed values of points in a file, so the image can be colored
+ * again without computing it.
+ * The file starts with a header of {@link #headerSize} bytes holding the
+ * viewport and parameters of palette, the rows of points follow. Every row
+ * holds whole numbers of iterations as ints followed by fractional parts as
+ * unsigned shorts, six bytes per point. Rows are accessed through memory
+ * mapped regions, so the file may be much larger than the heap.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class FieldFile implements AutoCloseable {
+
+    /**
+     * Creates the file and writes its header.
+     *
+     * @param file           path of file, an existing file is replaced
+     * @param viewport       the whole rendered sector
+     * @param baseIterations base iterations of palette
+     * @return file open for writing of rows
+     * @throws IOException if the file cannot be created
+     */
+    static FieldFile create(Path file, Viewport viewport, int baseIterations) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.putInt(MAGIC).putInt(VERSION);
+            header.putInt(viewport.width).putInt(viewport.height);
+            header.putInt(viewport.iterations).putInt(baseIterations).putInt(viewport.samples);
+            header.putDouble(viewport.sizeX).putDouble(viewport.sizeY);
+            header.put((byte) (viewport.adaptiveSampling ? 1 : 0)).putDouble(viewport.samplingThreshold);
+            header.put((byte) (viewport.marianiSilver ? 1 : 0));
+            putString(header, viewport.centerX.toString());
+            putString(header, viewport.centerY.toString());
+            header.rewind();
+            while (header.hasRemaining())
+                channel.write(header);
+            return new FieldFile(channel, viewport, baseIterations);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the file and reads its header.
+     *
+     * @param file path of file
+     * @return file open for reading of rows
+     * @throws IOException if the file cannot be read or it is not a field file
+     */
+    static FieldFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // reads the whole header
+            }
+            header.flip();
+            if (header.remaining() < headerSize || header.getInt() != MAGIC)
+                throw new IOException("Not a field file");
+            if (header.getInt() != VERSION)
+                throw new IOException("Unsupported version of field file");
+            int width = header.getInt(), height = header.getInt();
+            int iterations = header.getInt(), baseIterations = header.getInt(), samples = header.getInt();
+            double sizeX = header.getDouble(), sizeY = header.getDouble();
+            boolean adaptiveSampling = header.get() != 0;
+            double samplingThreshold = header.getDouble();
+            boolean marianiSilver = header.get() != 0;
+            BigDecimal centerX = new BigDecimal(getString(header)), centerY = new BigDecimal(getString(header));
+            Viewport viewport = new Viewport(centerX, centerY, sizeX, sizeY, width, height, iterations)
+                    .withSampling(samples, adaptiveSampling, samplingThreshold)
+                    .withMarianiSilver(marianiSilver);
+            if (channel.size() < headerSize + rowBytes(width) * height)
+                throw new IOException("Field file is truncated");
+            return new FieldFile(channel, viewport, baseIterations);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            channel.close();
+            throw new IOException("Corrupted header of field file", e);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private FieldFile(FileChannel channel, Viewport viewport, int baseIterations) {
+        this.channel = channel;
+        this.viewport = viewport;
+        this.baseIterations = baseIterations;
+    }
+
+    /**
+     * Writes rows of computed points.
+     * Values are normalized, so the fractional part is in the range from zero
+     * to one and it is kept with precision of 1/65536.
+     *
+     * @param field    computed points
+     * @param firstRow the first written row of field
+     * @param top      index of the first written row in file
+     * @param rows     number of rows
+     * @throws IOException if writing fails
+     */
+    void write(Field field, int firstRow, int top, int rows) throws IOException {
+        int width = viewport.width;
+        MappedByteBuffer region = map(FileChannel.MapMode.READ_WRITE, top, rows);
+        int[] counts = new int[width];
+        short[] fractions = new short[width];
+        for (int j = 0; j < rows; ++j) {
+            for (int i = 0; i < width; ++i) {
+                double value = field.get(i, j + firstRow);
+                counts[i] = (int) value;
+                fractions[i] = (short) Math.min((int) ((value - counts[i]) * 65536), 65535);
+            }
+            int offset = (int) (j * rowBytes(width));
+            region.position(offset);
+            region.asIntBuffer().put(counts);
+            region.position(offset + width * Integer.BYTES);
+            region.asShortBuffer().put(fractions);
+        }
+    }
+
+    /**
+     * Reads values of rows of points.
+     *
+     * @param top    index of the first read row
+     * @param rows   number of rows
+     * @param values array for values of points ordered by rows
+     * @throws IOException if reading fails
+     */
+    void read(int top, int rows, double[] values) throws IOException {
+        int width = viewport.width;
+        MappedByteBuffer region = map(FileChannel.MapMode.READ_ONLY, top, rows);
+        int[] counts = new int[width];
+        short[] fractions = new short[width];
+        for (int j = 0; j < rows; ++j) {
+            int offset = (int) (j * rowBytes(width));
+            region.position(offset);
+            region.asIntBuffer().get(counts);
+            region.position(offset + width * Integer.BYTES);
+            region.asShortBuffer().get(fractions);
+            for (int i = 0; i < width; ++i)
+                values[j * width + i] = counts[i] + (fractions[i] & 0xFFFF) / 65536.0;
+        }
+    }
+
+    /**
+     * @return the whole sector stored in file
+     */
+    Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * @return base iterations of palette the points were computed for
+     */
+    int getBaseIterations() {
+        return baseIterations;
+    }
+
+    /**
+     * @return maximal number of rows mapped at once
+     */
+    int getMaxRows() {
+        return (int) Math.max(1, Integer.MAX_VALUE / rowBytes(viewport.width));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Maps region of rows.
+     *
+     * @param mode mode of mapping
+     * @param top  index of the first row
+     * @param rows number of rows
+     * @return the mapped region
+     * @throws IOException              if mapping fails
+     * @throws IllegalArgumentException if the rows are out of image or there
+     *                                  are more of them than can be mapped
+     */
+    private MappedByteBuffer map(FileChannel.MapMode mode, int top, int rows) throws IOException {
+        if (top < 0 || rows < 0 || top + rows > viewport.height)
+            throw new IllegalArgumentException("Rows out of image");
+        if (rows > getMaxRows())
+            throw new IllegalArgumentException("Too many rows to map at once");
+        long row = rowBytes(viewport.width);
+        return channel.map(mode, headerSize + top * row, rows * row);
+    }
+
+    /**
+     * @param width width of image
+     * @return size of one row in bytes
+     */
+    private static long rowBytes(int width) {
+        return (long) width * (Integer.BYTES + Short.BYTES);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > Short.MAX_VALUE || bytes.length + Short.BYTES > buffer.remaining())
+            throw new IllegalArgumentException("Center is too long for header");
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Extension of field files.
+     */
+    static final String EXTENSION = ".field";
+
+    private static final int MAGIC = 0x4D464C44; // MFLD
+    private static final int VERSION = 2;
+    private static int headerSize = 4096;
+
+    private final FileChannel channel;
+    private final Viewport viewport;
+    private final int baseIterations;
+}
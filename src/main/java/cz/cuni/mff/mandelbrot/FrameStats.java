@@ -0,0 +1,66 @@
+package cz.cuni.mff.mandelbrot;
+
+/**
+ * Metrics of one completed computation of array of points.
+ * Times are in nanoseconds. Only iterations really computed are counted,
+ * points recognized by the bulb test or Mariani-Silver subdivision add none
+ * and periodic points add the iterations until the cycle was found.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class FrameStats {
+
+    /**
+     * @param restoreTime      time of restoring cached tiles or translating points
+     * @param referenceTime    time of computing reference orbit
+     * @param passTime         time of progressive or Mariani-Silver passes
+     * @param antialiasingTime time of adaptive antialiasing
+     * @param storeTime        time of storing tiles to cache
+     * @param iterations       number of iterations of all computed samples
+     * @param tiles            number of computed tiles
+     * @param tileTime         time spent computing tiles by all threads
+     * @param longestTile      time of the longest tile
+     * @param utilization      tile time divided by the time of computation
+     *                         multiplied by the number of threads
+     */
+    FrameStats(long restoreTime, long referenceTime, long passTime, long antialiasingTime, long storeTime,
+            long iterations, long tiles, long tileTime, long longestTile, double utilization) {
+        this.restoreTime = restoreTime;
+        this.referenceTime = referenceTime;
+        this.passTime = passTime;
+        this.antialiasingTime = antialiasingTime;
+        this.storeTime = storeTime;
+        this.iterations = iterations;
+        this.tiles = tiles;
+        this.tileTime = tileTime;
+        this.longestTile = longestTile;
+        this.utilization = utilization;
+    }
+
+    /**
+     * @return wall time of all stages
+     */
+    long getTotalTime() {
+        return restoreTime + referenceTime + passTime + antialiasingTime + storeTime;
+    }
+
+    /**
+     * @return iterations per second of wall time
+     */
+    double getIterationsPerSecond() {
+        long total = getTotalTime();
+        return total == 0 ? 0 : iterations * 1e9 / total;
+    }
+
+    /**
+     * @return mean time of tile
+     */
+    long getMeanTileTime() {
+        return tiles == 0 ? 0 : tileTime / tiles;
+    }
+
+    final long restoreTime, referenceTime, passTime, antialiasingTime, storeTime;
+    final long iterations, tiles, tileTime, longestTile;
+    final double utilization;
+}
@@ -1,5 +1,8 @@
 package cz.cuni.mff.mandelbrot;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+
 /**
  * Holds variables and function used through numerous classes.
  *
@@ -13,8 +16,14 @@ class Global {
     private static double originSizeX = 3, originSizeY = 2;
     static double sizeX = originSizeX, sizeY = originSizeY;
     static double pointX = -0.5, pointY = 0;
+    static BigDecimal precisePointX = BigDecimal.valueOf(pointX), precisePointY = BigDecimal.valueOf(pointY);
     static int height, width;
     private static double itPow = 0.1;
+    private static int samples = 4;
+    static boolean adaptiveSampling = true;
+    static double samplingThreshold = 0.25;
+    static boolean marianiSilver = false;
+    static boolean autoIterations = false;
 
     /**
      * Returns zoom in human readable integer.
@@ -56,6 +65,27 @@ class Global {
         return (int) (iterations / Math.pow(1.0 / zoom, itPow));
     }
 
+    /**
+     * Computes base iterations giving the number of iterations at given zoom.
+     * It is inverse of {@link #countIterations(long)}.
+     *
+     * @param iterations number of iterations at the zoom
+     * @param zoom       value of zoom
+     * @return base iterations, at least one, so they can divide counts of
+     * iterations in palette
+     */
+    static int baseIterations(int iterations, long zoom) {
+        return Math.max(1, (int) (Math.pow(1.0 / zoom, itPow) * iterations));
+    }
+
+    /**
+     * @param zoom integer representing zoom
+     * @return width of sector shown at the zoom
+     */
+    static double sizeOfZoom(long zoom) {
+        return originSizeX / zoom;
+    }
+
     /**
      * Sets iteration according the value given in the iteration text field.
      *
@@ -72,6 +102,57 @@ class Global {
         return iterations;
     }
 
+    /**
+     * @return number of samples computed in one pixel for antialiasing
+     */
+    static int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Sets number of samples computed in one pixel for antialiasing.
+     * The samples form a regular grid inside of pixel.
+     *
+     * @param newSamples one of 1, 4, 9 or 16
+     * @throws IllegalArgumentException if the value is not supported
+     */
+    static void setSamples(int newSamples) {
+        if (newSamples != 1 && newSamples != 4 && newSamples != 9 && newSamples != 16)
+            throw new IllegalArgumentException("Unsupported number of samples: " + newSamples);
+        samples = newSamples;
+    }
+
+    /**
+     * Moves center of the set by given distance.
+     * The precise center is kept with enough digits for actual size of sector,
+     * see {@link Viewport#getPrecision()}, {@link #pointX} and {@link #pointY}
+     * are its nearest doubles.
+     *
+     * @param dx distance in x axis
+     * @param dy distance in y axis
+     */
+    static void movePoint(double dx, double dy) {
+        MathContext mc = Viewport.fromGlobal().getPrecision();
+        precisePointX = precisePointX.add(new BigDecimal(dx), mc);
+        precisePointY = precisePointY.add(new BigDecimal(dy), mc);
+        pointX = precisePointX.doubleValue();
+        pointY = precisePointY.doubleValue();
+    }
+
+    /**
+     * Sets center of the set from its decimal representation.
+     *
+     * @param re real part of center
+     * @param im imaginary part of center
+     * @throws NumberFormatException if any of values is not a number
+     */
+    static void setPoint(String re, String im) {
+        precisePointX = new BigDecimal(re.trim());
+        precisePointY = new BigDecimal(im.trim());
+        pointX = precisePointX.doubleValue();
+        pointY = precisePointY.doubleValue();
+    }
+
     /**
      * If zoom out of bounds the sector sizes are sets to default values.
      */
@@ -0,0 +1,76 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+/**
+ * Chooses the number of iterations from escape counts of a sparse grid of
+ * points.
+ * The probe computes one point in every square of {@link #probeStride} pixels
+ * with a generous limit, large images are probed sparser. Points which escaped
+ * lie outside of the set, the more iterations they needed, the closer they are
+ * to its boundary. The limit is the escape count resolving the target fraction
+ * of them with a margin, so views far from the boundary get few iterations and
+ * deep filaments get enough of them. Points which did not escape even in the
+ * probe are taken as the inside of set, which looks the same with any limit.
+ * The probe is computed aside, so it does not touch the cache of tiles and the
+ * metrics of shown frames.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class IterationProbe {
+
+    /**
+     * Computes the probe and chooses the limit.
+     * The probe limit is a multiple of the iterations of viewport, which are
+     * expected to be given by the power law of {@link Global#countIterations()}.
+     *
+     * @param viewport the sector
+     * @return the same viewport with the chosen number of iterations
+     */
+    static Viewport choose(Viewport viewport) {
+        int limit = (int) min(maxIterations, max((long) viewport.iterations * probeFactor, minIterations));
+        int stride = max(probeStride, (int) ceil(sqrt((double) viewport.width * viewport.height / maxProbePoints)));
+        int width = max(1, viewport.width / stride), height = max(1, viewport.height / stride);
+        Viewport probe = new Viewport(viewport.centerX, viewport.centerY, viewport.sizeX, viewport.sizeY,
+                width, height, limit).withSampling(1, false, viewport.samplingThreshold);
+        Field field = Set.renderAside(probe);
+
+        int[] escaped = new int[width * height];
+        int count = 0;
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                int n = (int) field.get(i, j);
+                if (n < limit)
+                    escaped[count++] = n;
+            }
+        }
+        return viewport.withIterations(resolvingLimit(escaped, count, limit));
+    }
+
+    /**
+     * Finds the escape count resolving the target fraction of escaped points.
+     *
+     * @param escaped escape counts of points, they are sorted
+     * @param count   number of escaped points
+     * @param limit   limit of the probe
+     * @return number of iterations between {@link #minIterations} and the limit
+     */
+    private static int resolvingLimit(int[] escaped, int count, int limit) {
+        if (count == 0)
+            return min(minIterations, limit);
+        Arrays.sort(escaped, 0, count);
+        int resolving = escaped[min(count - 1, (int) ceil(target * count) - 1)];
+        return (int) min(limit, max(minIterations, ceil(resolving * margin)));
+    }
+
+    private static int probeStride = 8;
+    private static int maxProbePoints = 1 << 16;
+    private static int probeFactor = 16;
+    private static int minIterations = 64;
+    private static int maxIterations = 1 << 20;
+    private static double target = 0.995;
+    private static double margin = 1.25;
+}
@@ -18,6 +18,7 @@ public class Main extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
+        RenderMetrics.register();
         Parent root = FXMLLoader
                 .load(Objects.requireNonNull(Main.class.getClassLoader().getResource("mandelbrot.fxml")));
         primaryStage.setTitle("Mandelbrot Set");
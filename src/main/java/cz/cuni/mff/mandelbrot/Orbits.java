@@ -0,0 +1,135 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the state of orbits of points which reached the iteration limit, so
+ * they can be continued when the limit is raised.
+ * Only the center sample of every point is kept. The state of orbit is the
+ * last value of <code>z</code> and the value saved by the cycle detection,
+ * the number of iterations is the limit of the computation and the state of
+ * cycle detection follows from it. Points recognized as interior are marked,
+ * they need no iterations with any limit.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class Orbits {
+
+    /**
+     * Makes the arrays fit the canvas of given size, all states are lost.
+     *
+     * @param width  width of canvas
+     * @param height height of canvas
+     */
+    void resize(int width, int height) {
+        int points = width * height;
+        if (states != null && states.length == points)
+            return;
+        x = new double[points];
+        y = new double[points];
+        savedX = new double[points];
+        savedY = new double[points];
+        states = new byte[points];
+    }
+
+    /**
+     * Forgets the orbits of all points.
+     */
+    void clearAll() {
+        Arrays.fill(states, UNKNOWN);
+    }
+
+    /**
+     * Forgets the orbit of point, it has to be computed from the beginning.
+     *
+     * @param index index of point
+     */
+    void clear(int index) {
+        states[index] = UNKNOWN;
+    }
+
+    /**
+     * Marks point as surely lying in the set.
+     *
+     * @param index index of point
+     */
+    void prove(int index) {
+        states[index] = PROVEN;
+    }
+
+    /**
+     * Keeps the state of orbit which reached the iteration limit.
+     *
+     * @param index  index of point
+     * @param x      real part of the last value
+     * @param y      imaginary part of the last value
+     * @param savedX real part of the value saved by cycle detection
+     * @param savedY imaginary part of the value saved by cycle detection
+     */
+    void stop(int index, double x, double y, double savedX, double savedY) {
+        this.x[index] = x;
+        this.y[index] = y;
+        this.savedX[index] = savedX;
+        this.savedY[index] = savedY;
+        states[index] = STOPPED;
+    }
+
+    /**
+     * Copies the state of orbit from another instance of the same size.
+     *
+     * @param source the instance
+     * @param from   index of point in the source
+     * @param to     index of point in this instance
+     */
+    void copy(Orbits source, int from, int to) {
+        x[to] = source.x[from];
+        y[to] = source.y[from];
+        savedX[to] = source.savedX[from];
+        savedY[to] = source.savedY[from];
+        states[to] = source.states[from];
+    }
+
+    /**
+     * @param index index of point
+     * @return true if the point surely lies in the set
+     */
+    boolean isProven(int index) {
+        return states[index] == PROVEN;
+    }
+
+    /**
+     * @param index index of point
+     * @return true if the orbit can be continued
+     */
+    boolean isStopped(int index) {
+        return states[index] == STOPPED;
+    }
+
+    /**
+     * Period of saving the value in Brent's cycle detection after given
+     * number of iterations, which starts at one and doubles after every save.
+     *
+     * @param n number of iterations
+     * @return the period
+     */
+    static long power(long n) {
+        return Long.highestOneBit(n + 1);
+    }
+
+    /**
+     * Number of iterations since the last save of value in Brent's cycle
+     * detection.
+     *
+     * @param n number of iterations
+     * @return iterations since the last save
+     */
+    static long lambda(long n) {
+        return n + 1 - power(n);
+    }
+
+    private static final byte UNKNOWN = 0, PROVEN = 1, STOPPED = 2;
+
+    double[] x, y, savedX, savedY;
+    private byte[] states;
+}
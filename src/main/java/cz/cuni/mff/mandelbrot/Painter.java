@@ -0,0 +1,118 @@
+package cz.cuni.mff.mandelbrot;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.floor;
+import static java.lang.Math.min;
+
+/**
+ * Colors computed points into a buffer of pixels and draws it at once.
+ * The rows of canvas are split into bands colored in parallel. The buffer is
+ * allocated again only when the size of canvas changes. A zoomed preview is
+ * resampled from the last colored pixels into a second buffer, so repeated
+ * previews do not lose detail.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class Painter {
+
+    /**
+     * Colors all points, the pixel <code>[i][j]</code> gets the color of point
+     * <code>[i + dx][j + dy]</code>.
+     * Pixels without any point get the color of background.
+     *
+     * @param field    the points, null if none were computed yet
+     * @param viewport the sector of points, null if none was computed yet
+     * @param dx       translation in x axis in pixels
+     * @param dy       translation in y axis in pixels
+     */
+    void paint(Field field, Viewport viewport, int dx, int dy) {
+        width = Global.width;
+        height = Global.height;
+        if (pixels == null || pixels.length != width * height)
+            pixels = new int[width * height];
+
+        Palette palette = ControllerCode.getPalette(viewport != null ? viewport.iterations : Global.countIterations());
+        int bands = (height + bandHeight - 1) / bandHeight;
+        IntStream.range(0, bands).parallel().forEach(band ->
+                paintBand(field, band * bandHeight, min((band + 1) * bandHeight, height), dx, dy, palette));
+        painted = viewport;
+        shown = pixels;
+    }
+
+    /**
+     * Resamples the last colored pixels to the zoomed sector, every pixel gets
+     * the color of the nearest pixel of the last colored sector.
+     * Pixels out of the last colored sector get the color of background.
+     *
+     * @param viewport the zoomed sector
+     */
+    void paintZoomed(Viewport viewport) {
+        if (zoomed == null || zoomed.length != viewport.width * viewport.height)
+            zoomed = new int[viewport.width * viewport.height];
+        if (painted == null || painted.width != width || painted.height != height
+                || viewport.width != width || viewport.height != height) {
+            width = viewport.width;
+            height = viewport.height;
+            Arrays.fill(zoomed, background);
+            shown = zoomed;
+            return;
+        }
+
+        double scaleX = viewport.sizeX / painted.sizeX, scaleY = viewport.sizeY / painted.sizeY;
+        double shiftX = viewport.centerX.subtract(painted.centerX).doubleValue() / painted.getPixel();
+        double shiftY = painted.centerY.subtract(viewport.centerY).doubleValue() / (painted.sizeY / height);
+        IntStream.range(0, height).parallel().forEach(j -> {
+            int row = (int) floor(shiftY + (j + 0.5 - height / 2.0) * scaleY + height / 2.0);
+            for (int i = 0; i < width; ++i) {
+                int column = (int) floor(shiftX + (i + 0.5 - width / 2.0) * scaleX + width / 2.0);
+                boolean inside = row >= 0 && row < height && column >= 0 && column < width;
+                zoomed[j * width + i] = inside ? pixels[row * width + column] : background;
+            }
+        });
+        shown = zoomed;
+    }
+
+    /**
+     * Draws the colored pixels or the zoomed preview, whichever was painted
+     * the last.
+     *
+     * @param writer writer of canvas
+     */
+    void draw(PixelWriter writer) {
+        writer.setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), shown, 0, width);
+    }
+
+    /**
+     * Colors rows of pixels.
+     *
+     * @param field    the points, null if none were computed yet
+     * @param startRow first row
+     * @param endRow   last row
+     * @param dx       translation in x axis in pixels
+     * @param dy       translation in y axis in pixels
+     * @param palette  colors of points
+     */
+    private void paintBand(Field field, int startRow, int endRow, int dx, int dy, Palette palette) {
+        int columns = field != null ? field.getWidth() : 0, rows = field != null ? field.getHeight() : 0;
+        for (int j = startRow; j < endRow; ++j) {
+            int row = j * width;
+            for (int i = 0; i < width; ++i) {
+                boolean inside = i + dx >= 0 && i + dx < columns && j + dy >= 0 && j + dy < rows;
+                pixels[row + i] = inside ? palette.toArgb(field.get(i + dx, j + dy)) : background;
+            }
+        }
+    }
+
+    private static int bandHeight = 16;
+    private static int background = 0xFFFDFDFD;
+
+    private int width, height;
+    private int[] pixels, zoomed, shown;
+    private Viewport painted;
+}
@@ -0,0 +1,130 @@
+package cz.cuni.mff.mandelbrot;
+
+import static java.lang.Math.min;
+
+/**
+ * Maps values of points to colors using precomputed tables.
+ * The table of {@link Global#numberOfColors} colors holds channels already
+ * multiplied by sliders, the second table assigns a color to every number of
+ * iterations. Coloring of point then costs only two lookups and linear
+ * interpolation. The palette is immutable, a new one has to be created when
+ * any of its parameters changes.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class Palette {
+
+    /**
+     * Builds tables of colors.
+     *
+     * @param iterations     number of iterations the points were computed with
+     * @param baseIterations base number of iterations, see {@link Global#getIterations()}
+     * @param red            multiplier of red channel
+     * @param green          multiplier of green channel
+     * @param blue           multiplier of blue channel
+     */
+    Palette(int iterations, int baseIterations, double red, double green, double blue) {
+        this.iterations = iterations;
+        this.baseIterations = baseIterations;
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+
+        int colors = Global.numberOfColors;
+        reds = new float[colors + 1];
+        greens = new float[colors + 1];
+        blues = new float[colors + 1];
+        for (int k = 0; k < colors; ++k) {
+            int rgb = shuffle(k);
+            reds[k] = (float) ((rgb >> 16 & 0xFF) * red);
+            greens[k] = (float) ((rgb >> 8 & 0xFF) * green);
+            blues[k] = (float) ((rgb & 0xFF) * blue);
+        }
+
+        colorOf = new int[iterations + 2];
+        for (int n = 0; n < colorOf.length; ++n) {
+            if (n == iterations) {
+                colorOf[n] = colors;
+                continue;
+            }
+            colorOf[n] = min((int) (n % baseIterations / (double) iterations * colors), colors - 1);
+        }
+    }
+
+    /**
+     * Tests if the palette was built with given parameters.
+     *
+     * @return true if the palette can be used for these parameters
+     * @see #Palette(int, int, double, double, double)
+     */
+    boolean matches(int iterations, int baseIterations, double red, double green, double blue) {
+        return this.iterations == iterations && this.baseIterations == baseIterations
+                && this.red == red && this.green == green && this.blue == blue;
+    }
+
+    /**
+     * Computes color of point.
+     * It takes colors of the two nearest numbers of iterations and chooses
+     * a color between them using linear interpolation. Linear interpolation
+     * result depends on decimal part of <code>value</code> variable.
+     * Points which reached the iteration limit are black.
+     *
+     * @param value the value of point computed by definition of mandelbrot set
+     * @return the opaque color representing the value packed as
+     * <code>0xAARRGGBB</code>
+     */
+    int toArgb(double value) {
+        int n = (int) value;
+        if (n >= iterations)
+            n = iterations;
+        float dif = (float) (value - (int) value);
+        int color1 = colorOf[n], color2 = colorOf[n + 1];
+
+        return 0xFF000000
+                | (int) (reds[color1] + (reds[color2] - reds[color1]) * dif) << 16
+                | (int) (greens[color1] + (greens[color2] - greens[color1]) * dif) << 8
+                | (int) (blues[color1] + (blues[color2] - blues[color1]) * dif);
+    }
+
+    /**
+     * Computes the color of given index.
+     * The function process 12 bits of index and place corresponding bits
+     * to designated places in output RGB variable.
+     * <p>
+     * The bits are placed by the following key:
+     * <p>
+     * 12 bits CBA_987_654_321
+     * <p>
+     * R = C090_6321
+     * <p>
+     * G = 0B80_5321
+     * <p>
+     * B = 0907_4321
+     *
+     * @param index index of color
+     * @return the color packed as <code>0xRRGGBB</code>
+     */
+    private static int shuffle(int index) {
+        int R = (index & 0b000_000_000_111) | // 0000_0111
+                ((index & 0b000_000_100_000) >> 2) | // 0000_1000
+                ((index & 0b000_100_000_000) >> 3) | // 0010_0000
+                ((index & 0b100_000_000_000) >> 4); // 1000_0000
+
+        int G = (index & 0b000_000_000_111) | // 0000_0111
+                ((index & 0b000_000_010_000) >> 1) | // 0000_1000
+                ((index & 0b000_010_000_000) >> 2) | // 0010_0000
+                ((index & 0b010_000_000_000) >> 4); // 0100_0000
+
+        int B = (index & 0b000_000_001_111) | // 0000_1111
+                ((index & 0b000_001_000_000) >> 2) | // 0001_0000
+                ((index & 0b000_100_000_000) >> 2); // 0100_0000
+
+        return R << 16 | G << 8 | B;
+    }
+
+    private final int iterations, baseIterations;
+    private final double red, green, blue;
+    private final float[] reds, greens, blues;
+    private final int[] colorOf;
+}
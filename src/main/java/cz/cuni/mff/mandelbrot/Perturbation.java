@@ -0,0 +1,171 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.function.BooleanSupplier;
+
+import static java.lang.Math.*;
+
+/**
+ * Computes points of deeply zoomed set using perturbation theory.
+ * One reference orbit is computed in the center of the sector with arbitrary
+ * precision. Every point is then iterated only as a small difference from the
+ * reference orbit, which is precise enough in doubles.
+ * <p>
+ * If the point gets closer to zero than its difference from the reference
+ * orbit, the reference is not usable any more (glitch) and the point is
+ * rebased to the beginning of the reference orbit. The first iterations shared
+ * by all points of the sector are skipped using series approximation.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class Perturbation {
+
+    /**
+     * Computes reference orbit and series approximation for actual sector.
+     * If the computation is cancelled, the reference orbit ends early.
+     *
+     * @param viewport   the sector
+     * @param iterations number of iteration to use
+     * @param cancelled  tells if the computation was cancelled
+     */
+    Perturbation(Viewport viewport, int iterations, BooleanSupplier cancelled) {
+        this.viewport = viewport;
+        MathContext mc = viewport.getPrecision();
+        BigDecimal cx = viewport.centerX, cy = viewport.centerY.negate();
+        BigDecimal zx = BigDecimal.ZERO, zy = BigDecimal.ZERO;
+        BigDecimal two = BigDecimal.valueOf(2);
+
+        referenceX = new double[iterations + 1];
+        referenceY = new double[iterations + 1];
+        int n = 0;
+        while (n < iterations) {
+            BigDecimal zx2 = zx.multiply(zx, mc), zy2 = zy.multiply(zy, mc);
+            BigDecimal px = zx2.subtract(zy2, mc).add(cx, mc);
+            zy = two.multiply(zx, mc).multiply(zy, mc).add(cy, mc);
+            zx = px;
+            n++;
+            referenceX[n] = zx.doubleValue();
+            referenceY[n] = zy.doubleValue();
+            if (referenceX[n] * referenceX[n] + referenceY[n] * referenceY[n] > 4)
+                break;
+            if (n % 1024 == 0 && cancelled.getAsBoolean())
+                break;
+        }
+        referenceLength = n;
+
+        computeSeries();
+    }
+
+    /**
+     * Computes the exact value of point.
+     * The same contract as the standard algorithm in {@link Set.ThreadSet}.
+     *
+     * @param i          x position of point in array
+     * @param j          y position of point in array
+     * @param tx         shift in x axis
+     * @param ty         shift in y axis
+     * @param iterations number of iteration to use
+     * @param tempData   template array for storing results
+     * @param work       counter the iterations really computed are added to,
+     *                   the iterations skipped by the series are not counted
+     * @return this value is used in linear approximation of color
+     */
+    double comPoint(int i, int j, double tx, double ty, int iterations, double[] tempData, long[] work) {
+        double dcx = ((i + tx) / viewport.width - 0.5) * viewport.sizeX;
+        double dcy = ((j + ty) / viewport.height - 0.5) * viewport.sizeY;
+
+        double dx, dy;
+        int n = seriesSkip;
+        int m = seriesSkip;
+        if (n > 0) {
+            double dc2x = dcx * dcx - dcy * dcy, dc2y = 2 * dcx * dcy;
+            double dc3x = dc2x * dcx - dc2y * dcy, dc3y = dc2x * dcy + dc2y * dcx;
+            dx = seriesAX * dcx - seriesAY * dcy + seriesBX * dc2x - seriesBY * dc2y
+                    + seriesCX * dc3x - seriesCY * dc3y;
+            dy = seriesAX * dcy + seriesAY * dcx + seriesBX * dc2y + seriesBY * dc2x
+                    + seriesCX * dc3y + seriesCY * dc3x;
+        } else {
+            dx = 0;
+            dy = 0;
+        }
+
+        double mx = referenceX[m] + dx, my = referenceY[m] + dy;
+        while (n < iterations && mx * mx + my * my < 4) {
+            double zx = referenceX[m], zy = referenceY[m];
+            double px = 2 * (zx * dx - zy * dy) + dx * dx - dy * dy + dcx;
+            dy = 2 * (zx * dy + zy * dx) + 2 * dx * dy + dcy;
+            dx = px;
+            m++;
+            n++;
+
+            mx = referenceX[m] + dx;
+            my = referenceY[m] + dy;
+            if (mx * mx + my * my < dx * dx + dy * dy || m == referenceLength) {
+                dx = mx;
+                dy = my;
+                m = 0;
+            }
+        }
+
+        work[0] += n - seriesSkip;
+        double nu = 1;
+        if (n < iterations) {
+            double log_zn = log(mx * mx + my * my) / 2;
+            nu = log(log_zn / log(2)) / log(2);
+        }
+        tempData[j] += n;
+        return nu;
+    }
+
+    /**
+     * Finds how many iterations can be skipped using the third order series
+     * approximation.
+     * The approximation is accepted while the cubic term is negligible for the
+     * farthest point of the sector.
+     */
+    private void computeSeries() {
+        double radius = hypot(viewport.sizeX, viewport.sizeY) / 2;
+        double ax = 0, ay = 0, bx = 0, by = 0, cx = 0, cy = 0;
+
+        seriesSkip = 0;
+        for (int n = 0; n < referenceLength - 1; ++n) {
+            double zx = referenceX[n], zy = referenceY[n];
+            double nax = 2 * (zx * ax - zy * ay) + 1;
+            double nay = 2 * (zx * ay + zy * ax);
+            double nbx = 2 * (zx * bx - zy * by) + ax * ax - ay * ay;
+            double nby = 2 * (zx * by + zy * bx) + 2 * ax * ay;
+            double ncx = 2 * (zx * cx - zy * cy) + 2 * (ax * bx - ay * by);
+            double ncy = 2 * (zx * cy + zy * cx) + 2 * (ax * by + ay * bx);
+
+            double b = hypot(nbx, nby) * radius * radius;
+            double c = hypot(ncx, ncy) * radius * radius * radius;
+            if (!Double.isFinite(c) || c > seriesTolerance * b)
+                break;
+
+            ax = nax;
+            ay = nay;
+            bx = nbx;
+            by = nby;
+            cx = ncx;
+            cy = ncy;
+            seriesSkip = n + 1;
+        }
+
+        seriesAX = ax;
+        seriesAY = ay;
+        seriesBX = bx;
+        seriesBY = by;
+        seriesCX = cx;
+        seriesCY = cy;
+    }
+
+    private static double seriesTolerance = 1e-6;
+
+    private final Viewport viewport;
+    private final double[] referenceX, referenceY;
+    private final int referenceLength;
+    private int seriesSkip;
+    private double seriesAX, seriesAY, seriesBX, seriesBY, seriesCX, seriesCY;
+}
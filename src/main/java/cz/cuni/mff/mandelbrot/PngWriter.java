@@ -0,0 +1,161 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes RGB image in PNG format row after row.
+ * The rows are compressed as they come and written in chunks of bounded size,
+ * so the whole image never has to be in memory.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class PngWriter implements AutoCloseable {
+
+    /**
+     * Writes header of image.
+     *
+     * @param out    stream the image is written to
+     * @param width  width of image
+     * @param height height of image
+     * @throws IOException if writing fails
+     */
+    PngWriter(OutputStream out, int width, int height) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8); // bit depth
+        data.writeByte(2); // truecolor
+        data.writeByte(0); // deflate
+        data.writeByte(0); // adaptive filtering
+        data.writeByte(0); // no interlace
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        deflater = new Deflater(compressionLevel);
+        compressed = new DeflaterOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int length = Math.min(len, chunk.length - chunkLength);
+                    System.arraycopy(b, off, chunk, chunkLength, length);
+                    chunkLength += length;
+                    off += length;
+                    len -= length;
+                    if (chunkLength == chunk.length)
+                        flushChunk();
+                }
+            }
+        }, deflater, chunkSize);
+        row = new byte[1 + 3 * width];
+    }
+
+    /**
+     * Writes rows of image.
+     * Every row is filtered by the difference from the previous pixel.
+     *
+     * @param argb   colors of pixels packed as <code>0xAARRGGBB</code>, alpha
+     *               is ignored
+     * @param offset index of the first pixel
+     * @param rows   number of rows
+     * @throws IOException           if writing fails
+     * @throws IllegalStateException if there are more rows than the height of image
+     */
+    void writeRows(int[] argb, int offset, int rows) throws IOException {
+        if (written + rows > height)
+            throw new IllegalStateException("Image has only " + height + " rows");
+        row[0] = 1; // sub filter
+        for (int j = 0; j < rows; ++j) {
+            int previous = 0;
+            for (int i = 0; i < width; ++i) {
+                int color = argb[offset + j * width + i];
+                row[1 + 3 * i] = (byte) ((color >> 16) - (previous >> 16));
+                row[2 + 3 * i] = (byte) ((color >> 8) - (previous >> 8));
+                row[3 + 3 * i] = (byte) (color - previous);
+                previous = color;
+            }
+            compressed.write(row);
+        }
+        written += rows;
+    }
+
+    /**
+     * Finishes the image and closes the stream.
+     *
+     * @throws IOException           if writing fails
+     * @throws IllegalStateException if not all rows were written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (written != height)
+                throw new IllegalStateException("Only " + written + " of " + height + " rows were written");
+            compressed.finish();
+            flushChunk();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the compressed data collected so far as one chunk.
+     *
+     * @throws IOException if writing fails
+     */
+    private void flushChunk() throws IOException {
+        if (chunkLength == 0)
+            return;
+        writeChunk("IDAT", chunk, chunkLength);
+        chunkLength = 0;
+    }
+
+    /**
+     * Writes chunk with its length and checksum.
+     *
+     * @param type   type of chunk
+     * @param data   content of chunk
+     * @param length length of content
+     * @throws IOException if writing fails
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static int chunkSize = 1 << 16;
+    private static int compressionLevel = 6;
+
+    private final DataOutputStream out;
+    private final int width, height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream compressed;
+    private final byte[] chunk = new byte[chunkSize];
+    private final byte[] row;
+    private int chunkLength, written;
+}
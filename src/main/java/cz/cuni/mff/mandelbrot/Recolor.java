@@ -0,0 +1,130 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.*;
+
+/**
+ * Colors points stored by {@link Export} in a field file and writes them to
+ * PNG file without computing them again.
+ * The multipliers of channels have the same meaning as the sliders in GUI.
+ * The points are read in strips of mapped rows, every strip is colored on all
+ * cores while the previous one is compressed, so only two strips are in
+ * memory at once.
+ * <p>
+ * Usage: <code>Recolor file.field file.png [red green blue]</code>
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class Recolor {
+
+    /**
+     * Parses arguments and colors the image.
+     *
+     * @param args input field file, output PNG file and optionally the
+     *             multipliers of red, green and blue channel in percents
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length != 2 && args.length != 5)
+                throw new IllegalArgumentException("Wrong number of arguments");
+            double red = 1, green = 1, blue = 1;
+            if (args.length == 5) {
+                red = Double.parseDouble(args[2]) / 100;
+                green = Double.parseDouble(args[3]) / 100;
+                blue = Double.parseDouble(args[4]) / 100;
+                if (min(red, min(green, blue)) < 0 || max(red, max(green, blue)) > 1)
+                    throw new IllegalArgumentException("Channels have to be between 0 and 100");
+            }
+
+            long start = System.nanoTime();
+            recolor(Paths.get(args[0]), Paths.get(args[1]), red, green, blue);
+            System.err.printf("Colored in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Recolor file.field file.png [red green blue]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Coloring failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Colors the stored points.
+     *
+     * @param input  field file
+     * @param output PNG file
+     * @param red    multiplier of red channel
+     * @param green  multiplier of green channel
+     * @param blue   multiplier of blue channel
+     * @throws IOException if reading or writing fails
+     */
+    static void recolor(Path input, Path output, double red, double green, double blue) throws IOException {
+        try (FieldFile field = FieldFile.open(input)) {
+            Viewport viewport = field.getViewport();
+            int width = viewport.width, height = viewport.height;
+            Palette palette = new Palette(viewport.iterations, field.getBaseIterations(), red, green, blue);
+            int strip = max(1, min(field.getMaxRows(), stripPoints / width));
+            double[] values = new double[width * strip];
+            int[][] colors = {new int[width * strip], new int[width * strip]};
+
+            ExecutorService encoder = Executors.newSingleThreadExecutor();
+            try (PngWriter png = new PngWriter(new BufferedOutputStream(Files.newOutputStream(output)),
+                    width, height)) {
+                Future<?> pending = null;
+                for (int top = 0, k = 0; top < height; top += strip, ++k) {
+                    int rows = min(strip, height - top);
+                    field.read(top, rows, values);
+                    int[] stripColors = colors[k % 2];
+                    IntStream.range(0, rows * width).parallel()
+                            .forEach(index -> stripColors[index] = palette.toArgb(values[index]));
+
+                    await(pending);
+                    pending = encoder.submit(() -> {
+                        png.writeRows(stripColors, 0, rows);
+                        return null;
+                    });
+                    System.err.printf("\r%d of %d rows", top + rows, height);
+                }
+                await(pending);
+                System.err.println();
+            } finally {
+                encoder.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Waits until the strip is written.
+     *
+     * @param pending writing of strip, may be null
+     * @throws IOException if writing failed
+     */
+    private static void await(Future<?> pending) throws IOException {
+        if (pending == null)
+            return;
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Coloring was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException("Writing of image failed", e.getCause());
+        }
+    }
+
+    private static int stripPoints = 1 << 22;
+}
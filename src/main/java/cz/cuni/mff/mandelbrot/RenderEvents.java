@@ -0,0 +1,134 @@
+package cz.cuni.mff.mandelbrot;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Events recorded by Java Flight Recorder while the set is rendered.
+ * The events are only created when recording, so they cost almost nothing
+ * otherwise.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class RenderEvents {
+
+    private RenderEvents() {
+    }
+
+    /**
+     * Completed computation of array of points with time of its stages.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    @Name("cz.cuni.mff.mandelbrot.Frame")
+    @Label("Frame")
+    @Category({"Mandelbrot"})
+    @Description("Computation of array of points")
+    static class Frame extends Event {
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Iteration Limit")
+        int iterationLimit;
+
+        @Label("Restore")
+        @Description("Restoring cached tiles or translating points")
+        @Timespan
+        long restore;
+
+        @Label("Reference Orbit")
+        @Timespan
+        long referenceOrbit;
+
+        @Label("Passes")
+        @Description("Progressive or Mariani-Silver passes")
+        @Timespan
+        long passes;
+
+        @Label("Antialiasing")
+        @Timespan
+        long antialiasing;
+
+        @Label("Cache Store")
+        @Timespan
+        long cacheStore;
+
+        @Label("Iterations")
+        long iterations;
+
+        @Label("Tiles")
+        long tiles;
+
+        @Label("Longest Tile")
+        @Timespan
+        long longestTile;
+
+        @Label("Utilization")
+        double utilization;
+    }
+
+    /**
+     * Computation of one tile by one thread.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    @Name("cz.cuni.mff.mandelbrot.Tile")
+    @Label("Tile")
+    @Category({"Mandelbrot"})
+    @Description("Computation of tile of points by one thread")
+    static class Tile extends Event {
+
+        @Label("Column")
+        int column;
+
+        @Label("Row")
+        int row;
+
+        @Label("Columns")
+        int columns;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Stride")
+        int stride;
+
+        @Label("Iterations")
+        long iterations;
+    }
+
+    /**
+     * Coloring of points and upload of the pixels to canvas.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    @Name("cz.cuni.mff.mandelbrot.Paint")
+    @Label("Paint")
+    @Category({"Mandelbrot"})
+    @Description("Coloring of points and upload of pixels to canvas")
+    static class Paint extends Event {
+
+        @Label("Coloring")
+        @Timespan
+        long coloring;
+
+        @Label("Upload")
+        @Timespan
+        long upload;
+
+        @Label("Pixels")
+        int pixels;
+    }
+}
@@ -0,0 +1,226 @@
+package cz.cuni.mff.mandelbrot;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects metrics of rendering.
+ * The computation and the GUI report here every completed frame and every
+ * painting. The latest values are published as MBean
+ * <code>cz.cuni.mff.mandelbrot:type=RenderMetrics</code>, so they can be
+ * watched by JConsole or any other JMX client, and the same values are
+ * recorded as {@link RenderEvents} by Java Flight Recorder.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class RenderMetrics implements RenderMetricsMBean {
+
+    private RenderMetrics() {
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server.
+     * Registering more times does nothing.
+     *
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    static synchronized void register() {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Metrics cannot be registered", e);
+        }
+    }
+
+    /**
+     * Records completed computation.
+     *
+     * @param viewport the computed sector
+     * @param stats    metrics of the computation
+     */
+    static void recordFrame(Viewport viewport, FrameStats stats) {
+        lastFrame = stats;
+        frames.incrementAndGet();
+
+        RenderEvents.Frame event = new RenderEvents.Frame();
+        if (event.shouldCommit()) {
+            event.width = viewport.width;
+            event.height = viewport.height;
+            event.iterationLimit = viewport.iterations;
+            event.restore = stats.restoreTime;
+            event.referenceOrbit = stats.referenceTime;
+            event.passes = stats.passTime;
+            event.antialiasing = stats.antialiasingTime;
+            event.cacheStore = stats.storeTime;
+            event.iterations = stats.iterations;
+            event.tiles = stats.tiles;
+            event.longestTile = stats.longestTile;
+            event.utilization = stats.utilization;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records painting of canvas.
+     *
+     * @param event    event started before the coloring
+     * @param coloring time of coloring
+     * @param upload   time of upload of pixels to canvas
+     * @param pixels   number of painted pixels
+     */
+    static void recordPaint(RenderEvents.Paint event, long coloring, long upload, int pixels) {
+        coloringTime = coloring;
+        uploadTime = upload;
+        event.end();
+        if (event.shouldCommit()) {
+            event.coloring = coloring;
+            event.upload = upload;
+            event.pixels = pixels;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return metrics of the last completed computation, null if there is none
+     */
+    static FrameStats getLastFrame() {
+        return lastFrame;
+    }
+
+    /**
+     * Describes the last frame in a few short lines for the overlay of canvas.
+     *
+     * @return lines of text
+     */
+    static String[] describe() {
+        FrameStats stats = lastFrame;
+        if (stats == null)
+            return new String[]{"no completed frame"};
+        return new String[]{
+                String.format("frame %.1f ms, %d threads, %.0f %% used", millis(stats.getTotalTime()),
+                        Set.getParallelism(), 100 * stats.utilization),
+                String.format("restore %.1f, orbit %.1f, passes %.1f, aa %.1f, cache %.1f ms",
+                        millis(stats.restoreTime), millis(stats.referenceTime), millis(stats.passTime),
+                        millis(stats.antialiasingTime), millis(stats.storeTime)),
+                String.format("%,d iterations, %.0f M/s", stats.iterations, stats.getIterationsPerSecond() / 1e6),
+                String.format("%d tiles, mean %.2f ms, longest %.2f ms", stats.tiles,
+                        millis(stats.getMeanTileTime()), millis(stats.longestTile)),
+                String.format("coloring %.1f ms, upload %.1f ms", millis(coloringTime), millis(uploadTime))};
+    }
+
+    @Override
+    public long getFrames() {
+        return frames.get();
+    }
+
+    @Override
+    public double getFrameTime() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : millis(stats.getTotalTime());
+    }
+
+    @Override
+    public double getRestoreTime() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : millis(stats.restoreTime);
+    }
+
+    @Override
+    public double getReferenceOrbitTime() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : millis(stats.referenceTime);
+    }
+
+    @Override
+    public double getPassTime() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : millis(stats.passTime);
+    }
+
+    @Override
+    public double getAntialiasingTime() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : millis(stats.antialiasingTime);
+    }
+
+    @Override
+    public double getCacheStoreTime() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : millis(stats.storeTime);
+    }
+
+    @Override
+    public long getIterations() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : stats.iterations;
+    }
+
+    @Override
+    public double getIterationsPerSecond() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : stats.getIterationsPerSecond();
+    }
+
+    @Override
+    public long getTiles() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : stats.tiles;
+    }
+
+    @Override
+    public double getMeanTileTime() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : millis(stats.getMeanTileTime());
+    }
+
+    @Override
+    public double getLongestTileTime() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : millis(stats.longestTile);
+    }
+
+    @Override
+    public double getUtilization() {
+        FrameStats stats = lastFrame;
+        return stats == null ? 0 : stats.utilization;
+    }
+
+    @Override
+    public double getColoringTime() {
+        return millis(coloringTime);
+    }
+
+    @Override
+    public double getUploadTime() {
+        return millis(uploadTime);
+    }
+
+    @Override
+    public long getCacheHits() {
+        return Set.getTileCache().getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return Set.getTileCache().getMisses();
+    }
+
+    /**
+     * @param nanos time in nanoseconds
+     * @return the time in milliseconds
+     */
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static final String objectName = "cz.cuni.mff.mandelbrot:type=RenderMetrics";
+    private static final RenderMetrics instance = new RenderMetrics();
+    private static final AtomicLong frames = new AtomicLong();
+    private static volatile FrameStats lastFrame;
+    private static volatile long coloringTime, uploadTime;
+}
@@ -0,0 +1,97 @@
+package cz.cuni.mff.mandelbrot;
+
+/**
+ * Management interface of {@link RenderMetrics}.
+ * Times are in milliseconds and describe the last completed computation.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public interface RenderMetricsMBean {
+
+    /**
+     * @return number of completed computations
+     */
+    long getFrames();
+
+    /**
+     * @return wall time of the last computation
+     */
+    double getFrameTime();
+
+    /**
+     * @return time of restoring cached tiles or translating points
+     */
+    double getRestoreTime();
+
+    /**
+     * @return time of computing reference orbit
+     */
+    double getReferenceOrbitTime();
+
+    /**
+     * @return time of progressive or Mariani-Silver passes
+     */
+    double getPassTime();
+
+    /**
+     * @return time of adaptive antialiasing
+     */
+    double getAntialiasingTime();
+
+    /**
+     * @return time of storing tiles to cache
+     */
+    double getCacheStoreTime();
+
+    /**
+     * @return number of iterations really computed, see {@link FrameStats}
+     */
+    long getIterations();
+
+    /**
+     * @return iterations per second of wall time
+     */
+    double getIterationsPerSecond();
+
+    /**
+     * @return number of computed tiles
+     */
+    long getTiles();
+
+    /**
+     * @return mean time of tile
+     */
+    double getMeanTileTime();
+
+    /**
+     * @return time of the longest tile
+     */
+    double getLongestTileTime();
+
+    /**
+     * @return time spent computing tiles divided by the time of computation
+     * multiplied by the number of threads
+     */
+    double getUtilization();
+
+    /**
+     * @return time of coloring the last drawn pixels
+     */
+    double getColoringTime();
+
+    /**
+     * @return time of uploading the last drawn pixels to canvas
+     */
+    double getUploadTime();
+
+    /**
+     * @return number of tiles found in cache
+     */
+    long getCacheHits();
+
+    /**
+     * @return number of tiles missing in cache
+     */
+    long getCacheMisses();
+}
@@ -0,0 +1,259 @@
+package cz.cuni.mff.mandelbrot;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs computations of the set out of the GUI thread.
+ * Only one computation runs at a time. A new request cancels the running
+ * computation and replaces the request waiting for its turn, so rapid events
+ * are coalesced into the latest one. Every pass of computation is posted back
+ * to the GUI thread unless it was already replaced by a newer one. The GUI
+ * thread gets a copy of points made between passes, so it never reads points
+ * the threads of set are writing.
+ * <p>
+ * With automatic iterations the limit of every new view is chosen by
+ * {@link IterationProbe}, translations keep the limit of translated points.
+ * The set keeps orbits of points, so raising of the limit continues only
+ * points which reached it and zooming by a power of two reuses points lying on
+ * the new grid.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class RenderService {
+
+    /**
+     * Request for computation of the set.
+     * It is either the computation of the whole array of points, a translation
+     * of already computed points, a continuation of points which reached the
+     * iteration limit or a zoom reusing points of the previous sector.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    static class Request {
+
+        private Request(boolean translation, boolean resumed, boolean zoomed, int dx, int dy) {
+            this.translation = translation;
+            this.resumed = resumed;
+            this.zoomed = zoomed;
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        /**
+         * @return request to compute the whole array of points
+         */
+        static Request full() {
+            return new Request(false, false, false, 0, 0);
+        }
+
+        /**
+         * @return request to continue points after the iteration limit was
+         * raised
+         * @see Set#setConstructResumed(Viewport, long)
+         */
+        static Request resumed() {
+            return new Request(false, true, false, 0, 0);
+        }
+
+        /**
+         * @return request to compute the zoomed sector reusing points of the
+         * previous one
+         * @see Set#setConstructZoomed(Viewport, long)
+         */
+        static Request zoomed() {
+            return new Request(false, false, true, 0, 0);
+        }
+
+        /**
+         * @param dx translation in x axis in pixels
+         * @param dy translation in y axis in pixels
+         * @return request to translate the array of points
+         * @see Set#setConstructTranslated(Viewport, int, int, long)
+         */
+        static Request translated(int dx, int dy) {
+            return new Request(true, false, false, dx, dy);
+        }
+
+        /**
+         * Merges this request waiting for its turn with the newer one.
+         * Two translations sum up, two continuations are one continuation and
+         * two zooms are one zoom, anything else needs the whole array.
+         *
+         * @param newer the newer request
+         * @return request doing the work of both
+         */
+        Request merge(Request newer) {
+            if (translation && newer.translation)
+                return translated(dx + newer.dx, dy + newer.dy);
+            if (resumed && newer.resumed)
+                return resumed();
+            if (zoomed && newer.zoomed)
+                return zoomed();
+            return full();
+        }
+
+        /**
+         * Runs the computation in the calling thread.
+         *
+         * @param set         the computed set
+         * @param viewport    the sector
+         * @param computation generation of the computation
+         */
+        void run(Set set, Viewport viewport, long computation) {
+            if (translation)
+                set.setConstructTranslated(viewport, dx, dy, computation);
+            else if (resumed)
+                set.setConstructResumed(viewport, computation);
+            else if (zoomed)
+                set.setConstructZoomed(viewport, computation);
+            else
+                set.setConstruct(viewport, computation);
+        }
+
+        private final boolean translation, resumed, zoomed;
+        private final int dx, dy;
+    }
+
+    /**
+     * Starts the thread running the computations.
+     *
+     * @param onPass    action run in GUI thread after every pass of the latest
+     *                  computation
+     * @param onFailure action run in GUI thread with the exception of failed
+     *                  computation
+     */
+    RenderService(Runnable onPass, Consumer<RuntimeException> onFailure) {
+        this.onFailure = onFailure;
+        set.setResumable(true);
+        set.setPassListener(computation -> {
+            // no thread of set writes the points between passes
+            Field copy = spare.getAndSet(null);
+            if (copy == null)
+                copy = new Field();
+            copy.copyFrom(set.getField());
+            Field snapshot = copy;
+            Viewport viewport = set.getViewport();
+            Platform.runLater(() -> {
+                if (set.isCancelled(computation)) {
+                    spare.set(snapshot);
+                    return;
+                }
+                if (shownField != null)
+                    spare.set(shownField);
+                shownField = snapshot;
+                shownViewport = viewport;
+                onPass.run();
+            });
+        });
+
+        Thread thread = new Thread(this::loop, "renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Cancels the running computation, changes parameters of the set and
+     * schedules the new computation.
+     * The parameters in {@link Global} may be changed only by the given update,
+     * which runs when no computation can use them.
+     *
+     * @param request the computation to run
+     * @param update  changes of parameters of the set
+     */
+    synchronized void submit(Request request, Runnable update) {
+        set.killThreads();
+        update.run();
+        pending = pending == null ? request : pending.merge(request);
+        notifyAll();
+    }
+
+    /**
+     * Cancels the running computation and schedules the new one.
+     *
+     * @param request the computation to run
+     */
+    void submit(Request request) {
+        submit(request, () -> {
+        });
+    }
+
+    /**
+     * Cancels the running computation without scheduling a new one.
+     */
+    synchronized void cancel() {
+        set.killThreads();
+    }
+
+    /**
+     * @return the set computed by this service
+     */
+    Set getSet() {
+        return set;
+    }
+
+    /**
+     * Returns the copy of points of the last pass posted to the GUI thread.
+     * It may be used only in the GUI thread.
+     *
+     * @return the points, null before the first pass
+     */
+    Field getShownField() {
+        return shownField;
+    }
+
+    /**
+     * @return the sector of {@link #getShownField()}, null before the first
+     * pass
+     */
+    Viewport getShownViewport() {
+        return shownViewport;
+    }
+
+    /**
+     * Takes the latest request and runs it, forever.
+     * A request whose computation fails is passed to the failure action in
+     * GUI thread and skipped.
+     */
+    private void loop() {
+        while (true) {
+            Request request;
+            Viewport viewport;
+            long computation;
+            synchronized (this) {
+                while (pending == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                request = pending;
+                pending = null;
+                viewport = Viewport.fromGlobal();
+                computation = set.killThreads();
+            }
+            try {
+                if (Global.autoIterations && request.translation && set.getViewport() != null)
+                    viewport = viewport.withIterations(set.getViewport().iterations);
+                else if (Global.autoIterations)
+                    viewport = IterationProbe.choose(viewport);
+                request.run(set, viewport, computation);
+            } catch (RuntimeException e) {
+                // a failed computation must not stop the following ones
+                Platform.runLater(() -> onFailure.accept(e));
+            }
+        }
+    }
+
+    private final Set set = new Set();
+    private final Consumer<RuntimeException> onFailure;
+    private final AtomicReference<Field> spare = new AtomicReference<>();
+    private Request pending;
+    private Field shownField;
+    private Viewport shownViewport;
+}
@@ -1,14 +1,26 @@
 package cz.cuni.mff.mandelbrot;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
 
 import static java.lang.Math.*;
 
 /**
  * Represents the set and compute values of each point.
  * Provides multithreading.
+ * <p>
+ * Every instance holds its own array of points and computes one
+ * {@link Viewport} after another, so more instances can compute at once. All
+ * of them share one pool of threads and one cache of tiles.
  *
  * @author Filip Cizmar
  * @version 1.0
@@ -16,57 +28,474 @@ import static java.lang.Math.*;
 class Set {
 
     /**
-     * This class represents one thread of computation of array of points.
+     * This class represents one tile of computation of array of points.
+     * The tile splits itself recursively to smaller tiles, which are stolen by
+     * idle threads of the pool. The half closer to the center of canvas is
+     * computed first by the thread which split the tile, the farther half waits
+     * for a thief. Large tiles are always split, middle-sized ones only when
+     * the pool is short of tasks.
+     * <p>
+     * In Mariani-Silver mode only the border of tile is computed. If all
+     * points of border belong to the set, the whole tile does as the set is
+     * connected, so its inside is filled without iterating. Otherwise the tile
+     * is split by a computed line into two tiles sharing it as border.
      *
      * @author Filip Cizmar
      * @version 1.0
      */
-    static class ThreadSet implements Runnable {
+    class ThreadSet extends RecursiveAction {
 
         /**
-         * Sets static variables.
+         * Only the points of tile are computed, the rest of the region is left
+         * untouched. If the stride is greater than one, only every stride-th
+         * point of region is computed and its value is copied to the whole
+         * block of points next to it.
          *
-         * @param start first column
-         * @param end   last colunm
-         * @param data  array of points
+         * @param tile           first column, last column, first row and last row
+         *                       of the tile, the first column and row have to be
+         *                       aligned to {@link #progressiveStride} within region
+         * @param region         first column, last column, first row and last row
+         *                       of the whole region
+         * @param stride         distance of computed points
+         * @param previousStride stride of the previous pass whose points are
+         *                       already computed, zero if there is none
+         * @param offsets        positions of samples inside of pixel
+         * @param refine         if not null only marked points are computed
+         * @param marianiSilver  if the tile is computed by Mariani-Silver
+         *                       subdivision, the stride has to be one
+         * @param generation     generation of the computation the thread belongs to
          */
-        ThreadSet(int start, int end, double[][] data) {
-            startData = start;
-            endData = end;
-            ThreadSet.startPointX = Global.pointX - Global.sizeX / 2;
-            ThreadSet.startPointY = Global.pointY + Global.sizeY / 2;
-            ThreadSet.data = data;
+        ThreadSet(int[] tile, int[] region, int stride, int previousStride,
+                double[][] offsets, boolean[] refine, boolean marianiSilver, long generation) {
+            this.generation = generation;
+            this.marianiSilver = marianiSilver;
+            this.tile = tile;
+            this.region = region;
+            this.stride = stride;
+            this.previousStride = previousStride;
+            this.offsets = offsets;
+            this.refine = refine;
         }
 
         /**
-         * Main method runs the thread.
-         * Computes value of all points in given range. For antialiasing
-         * it computes the value 4 times in slightly shifted positions.
+         * Main method runs the task.
+         * Splits the tile or computes all its points.
          */
         @Override
-        public void run() {
-            int iterations = Global.countIterations();
+        protected void compute() {
+            if (Set.this.isCancelled(generation))
+                return;
+            if (marianiSilver) {
+                subdivide();
+                return;
+            }
+
+            int columns = tile[1] - tile[0], rows = tile[3] - tile[2];
+            long points = (long) ((columns + stride - 1) / stride) * ((rows + stride - 1) / stride);
+            boolean splittable = max(columns, rows) > progressiveStride && points > minTilePoints;
+            if (splittable && (points > maxTilePoints || getSurplusQueuedTaskCount() < surplusTasks)) {
+                int[] near, far;
+                if (columns >= rows) {
+                    int middle = tile[0] + align(columns / 2);
+                    near = new int[]{tile[0], middle, tile[2], tile[3]};
+                    far = new int[]{middle, tile[1], tile[2], tile[3]};
+                } else {
+                    int middle = tile[2] + align(rows / 2);
+                    near = new int[]{tile[0], tile[1], tile[2], middle};
+                    far = new int[]{tile[0], tile[1], middle, tile[3]};
+                }
+                if (distanceFromCenter(near) > distanceFromCenter(far)) {
+                    int[] swap = near;
+                    near = far;
+                    far = swap;
+                }
+
+                runParts(near, far);
+                return;
+            }
+
+            RenderEvents.Tile event = new RenderEvents.Tile();
+            event.begin();
+            long start = System.nanoTime();
+            computeTile();
+            recordTile(start, event);
+        }
+
+        /**
+         * Computes value of all points of tile. For antialiasing
+         * it computes the value in every given position inside of pixel and
+         * averages them.
+         */
+        private void computeTile() {
+            int iterations = viewport.iterations;
+            int startRow = tile[2], endRow = tile[3];
+            int[] columns = new int[endRow - startRow], rows = new int[endRow - startRow];
+
+            for (int i = tile[0]; i < tile[1]; ++i) {
+                if (Set.this.isCancelled(generation))
+                    return;
+                if ((i - region[0]) % stride != 0)
+                    continue;
+
+                boolean previousColumn = previousStride > 0 && (i - region[0]) % previousStride == 0;
+                int count = 0;
+                for (int j = startRow; j < endRow; j += stride) {
+                    if (previousColumn && (j - region[2]) % previousStride == 0)
+                        continue;
+                    if (refine == null || refine[j * viewport.width + i]) {
+                        columns[count] = i;
+                        rows[count++] = j;
+                    }
+                }
+
+                computePoints(columns, rows, count, iterations);
+                if (stride > 1)
+                    fillBlocks(i, rows, count);
+            }
+        }
+
+        /**
+         * Computes the tile by Mariani-Silver subdivision.
+         * The border of the first tile is computed here, the border of tiles
+         * created by splitting is already computed.
+         */
+        private void subdivide() {
+            RenderEvents.Tile event = new RenderEvents.Tile();
+            event.begin();
+            long start = System.nanoTime();
+            int iterations = viewport.iterations;
+            int left = tile[0], right = tile[1] - 1, top = tile[2], bottom = tile[3] - 1;
+            if (!bordered) {
+                computeRectangle(left, right + 1, top, top + 1, iterations);
+                computeRectangle(left, right + 1, bottom, bottom + 1, iterations);
+                computeRectangle(left, left + 1, top + 1, bottom, iterations);
+                computeRectangle(right, right + 1, top + 1, bottom, iterations);
+            }
+
+            int[] near = null, far = null;
+            if (right - left < 2 || bottom - top < 2) {
+                // there is no point inside of border
+            } else if (isBorderInSet(iterations)) {
+                field.set(left + 1, top + 1, iterations, 0);
+                field.fill(left + 1, top + 1, right, bottom);
+            } else if ((long) (right - left - 1) * (bottom - top - 1) <= minTilePoints) {
+                computeRectangle(left + 1, right, top + 1, bottom, iterations);
+            } else if (right - left >= bottom - top) {
+                int middle = (left + right) / 2;
+                computeRectangle(middle, middle + 1, top + 1, bottom, iterations);
+                near = new int[]{tile[0], middle + 1, tile[2], tile[3]};
+                far = new int[]{middle, tile[1], tile[2], tile[3]};
+            } else {
+                int middle = (top + bottom) / 2;
+                computeRectangle(left + 1, right, middle, middle + 1, iterations);
+                near = new int[]{tile[0], tile[1], tile[2], middle + 1};
+                far = new int[]{tile[0], tile[1], middle, tile[3]};
+            }
+            recordTile(start, event);
+
+            if (near != null && !Set.this.isCancelled(generation)) {
+                if (distanceFromCenter(near) > distanceFromCenter(far)) {
+                    int[] swap = near;
+                    near = far;
+                    far = swap;
+                }
+                runParts(near, far);
+            }
+        }
+
+        /**
+         * Adds the time and iterations of computed tile to the metrics of
+         * computation.
+         *
+         * @param start start of computation of tile
+         * @param event event started with the computation
+         */
+        private void recordTile(long start, RenderEvents.Tile event) {
+            long time = System.nanoTime() - start;
+            busyTime.add(time);
+            longestTile.accumulate(time);
+            tiles.increment();
+            iterationCount.add(iterationsDone[0]);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.column = tile[0];
+                event.row = tile[2];
+                event.columns = tile[1] - tile[0];
+                event.rows = tile[3] - tile[2];
+                event.stride = stride;
+                event.iterations = iterationsDone[0];
+                event.commit();
+            }
+        }
+
+        /**
+         * Tests if all points of border of tile reached the iteration limit.
+         *
+         * @param iterations number of iteration to use
+         * @return true if the border lies in the set
+         */
+        private boolean isBorderInSet(int iterations) {
+            int left = tile[0], right = tile[1] - 1, top = tile[2], bottom = tile[3] - 1;
+            for (int i = left; i <= right; ++i) {
+                if (field.get(i, top) != iterations || field.get(i, bottom) != iterations)
+                    return false;
+            }
+            for (int j = top + 1; j < bottom; ++j) {
+                if (field.get(left, j) != iterations || field.get(right, j) != iterations)
+                    return false;
+            }
+            return true;
+        }
 
-            for (int i = startData; i < endData; ++i) {
-                double[] tempData = new double[Global.height];
-                for (int j = 0; j < Global.height; ++j) {
-                    double gnu = 0.0;
+        /**
+         * Computes all points of rectangle.
+         *
+         * @param startColumn first column
+         * @param endColumn   last column
+         * @param startRow    first row
+         * @param endRow      last row
+         * @param iterations  number of iteration to use
+         */
+        private void computeRectangle(int startColumn, int endColumn, int startRow, int endRow, int iterations) {
+            if (startColumn >= endColumn || startRow >= endRow)
+                return;
+            int count = (endColumn - startColumn) * (endRow - startRow);
+            int[] columns = new int[count], rows = new int[count];
+            int k = 0;
+            for (int i = startColumn; i < endColumn; ++i) {
+                for (int j = startRow; j < endRow; ++j) {
+                    columns[k] = i;
+                    rows[k++] = j;
+                }
+            }
+            computePoints(columns, rows, count, iterations);
+        }
+
+        /**
+         * Runs tasks computing two parts of this tile. The near part is
+         * computed by this thread, the far one is left to be stolen.
+         *
+         * @param near first column, last column, first row and last row of the
+         *             part computed first
+         * @param far  first column, last column, first row and last row of the
+         *             other part
+         */
+        private void runParts(int[] near, int[] far) {
+            ThreadSet farTask = split(far);
+            farTask.fork();
+            split(near).compute();
+            farTask.join();
+        }
+
+        /**
+         * Creates task computing part of this tile.
+         *
+         * @param part first column, last column, first row and last row of the part
+         * @return the task
+         */
+        private ThreadSet split(int[] part) {
+            ThreadSet task = new ThreadSet(part, region, stride, previousStride, offsets, refine,
+                    marianiSilver, generation);
+            task.bordered = marianiSilver;
+            return task;
+        }
+
+        /**
+         * @param length number of points
+         * @return the length rounded to whole blocks of the coarsest pass
+         */
+        private static int align(int length) {
+            return max(length / progressiveStride, 1) * progressiveStride;
+        }
+
+        /**
+         * @param tile first column, last column, first row and last row
+         * @return squared distance of center of tile from center of canvas
+         */
+        private double distanceFromCenter(int[] tile) {
+            double x = (tile[0] + tile[1] - viewport.width) / 2.0;
+            double y = (tile[2] + tile[3] - viewport.height) / 2.0;
+            return x * x + y * y;
+        }
 
-                    gnu += comPoint(i, j, 0.2, 0.2, iterations, tempData);
-                    gnu += comPoint(i, j, 0.2, 0.8, iterations, tempData);
-                    gnu += comPoint(i, j, 0.8, 0.2, iterations, tempData);
-                    gnu += comPoint(i, j, 0.8, 0.8, iterations, tempData);
+        /**
+         * Copies values of computed points to the blocks of points they represent.
+         *
+         * @param i     column
+         * @param rows  rows of computed points
+         * @param count number of computed points
+         */
+        private void fillBlocks(int i, int[] rows, int count) {
+            int lastColumn = min(i + stride, region[1]);
+            for (int r = 0; r < count; ++r) {
+                int j = rows[r];
+                field.fill(i, j, lastColumn, min(j + stride, region[3]));
+            }
+        }
 
-                    tempData[j] = ((long) tempData[j] / 4) + 1 - gnu / 4;
+        /**
+         * Computes given points by the fastest available algorithm.
+         * Continued orbits are computed by scalar code, which reads their state.
+         *
+         * @param columns    columns of points to compute
+         * @param rows       rows of points to compute
+         * @param count      number of points to compute
+         * @param iterations number of iteration to use
+         */
+        private void computePoints(int[] columns, int[] rows, int count, int iterations) {
+            if (perturbation == null && vectorized && resumedFrom == 0)
+                computeVectorized(columns, rows, count, iterations);
+            else
+                compute(columns, rows, count, iterations);
+        }
+
+        /**
+         * Computes given points one sample after another.
+         *
+         * @param columns    columns of points to compute
+         * @param rows       rows of points to compute
+         * @param count      number of points to compute
+         * @param iterations number of iteration to use
+         */
+        private void compute(int[] columns, int[] rows, int count, int iterations) {
+            double[] tempData = buffers.get().column(viewport.height);
+            for (int r = 0; r < count; ++r) {
+                if (Set.this.isCancelled(generation))
+                    return;
+                int i = columns[r], j = rows[r];
+                double gnu = 0.0;
+                tempData[j] = 0;
+                boolean limited = false;
+
+                for (double[] offset : offsets) {
+                    double before = tempData[j];
+                    gnu += sample(i, j, offset[0], offset[1], iterations, tempData);
+                    limited |= tempData[j] - before >= iterations;
                 }
-                data[i] = tempData;
+
+                store(i, j, tempData[j], gnu, limited);
             }
         }
 
+        /**
+         * Stores the value of point averaged from all its samples.
+         *
+         * @param i       column
+         * @param j       row
+         * @param sum     sum of iterations of all samples
+         * @param gnu     sum of values used in linear approximation of color
+         * @param limited if any of samples reached the iteration limit
+         */
+        private void store(int i, int j, double sum, double gnu, boolean limited) {
+            field.set(i, j, (int) ((long) sum / offsets.length), 1 - gnu / offsets.length);
+            if (limitedPoints != null)
+                limitedPoints[j * viewport.width + i] = limited;
+        }
+
+        /**
+         * Computes the same values as {@link #compute(int[], int[], int, int)}
+         * using {@link VectorKernel}.
+         * All samples of the points are collected and computed together, points in
+         * the bulbs are counted without iterating.
+         *
+         * @param columns    columns of points to compute
+         * @param rows       rows of points to compute
+         * @param count      number of points to compute
+         * @param iterations number of iteration to use
+         */
+        private void computeVectorized(int[] columns, int[] rows, int count, int iterations) {
+            Buffers buffers = ThreadSet.buffers.get();
+            buffers.reserve(VectorKernel.paddedLength(count * offsets.length), count);
+            double[] x0 = buffers.x0, y0 = buffers.y0, n = buffers.n, nu = buffers.nu;
+            double[] sum = buffers.sum, gnu = buffers.gnu;
+            boolean[] limited = buffers.limited;
+            int[] owner = buffers.owner;
+            Orbits orbits = offsets.length == 1 ? Set.this.orbits : null;
+
+            int samples = 0;
+            for (int r = 0; r < count; ++r) {
+                int i = columns[r], j = rows[r];
+                sum[r] = 0;
+                gnu[r] = 0;
+                limited[r] = false;
+                for (double[] offset : offsets) {
+                    double x = ((i + offset[0]) / viewport.width) * viewport.sizeX + viewport.startPointX;
+                    double y = ((j + offset[1]) / viewport.height) * viewport.sizeY - viewport.startPointY;
+                    if (isInBulbs(x, y)) {
+                        sum[r] += iterations;
+                        gnu[r] += 1;
+                        limited[r] = true;
+                        if (orbits != null)
+                            orbits.prove(j * viewport.width + i);
+                        continue;
+                    }
+                    x0[samples] = x;
+                    y0[samples] = y;
+                    owner[samples++] = r;
+                }
+            }
+
+            double[][] orbit = orbits != null ? buffers.orbit : null;
+            iterationsDone[0] += VectorKernel.comPoints(x0, y0, samples, iterations,
+                    viewport.getPeriodicityTolerance(), n, nu, orbit);
+            for (int k = 0; k < samples; ++k) {
+                int r = owner[k];
+                sum[r] += n[k];
+                gnu[r] += nu[k];
+                if (n[k] < iterations)
+                    continue;
+                limited[r] = true;
+                if (orbits == null)
+                    continue;
+                int index = rows[r] * viewport.width + columns[r];
+                if (Double.isNaN(orbit[0][k]))
+                    orbits.prove(index);
+                else
+                    orbits.stop(index, orbit[0][k], orbit[1][k], orbit[2][k], orbit[3][k]);
+            }
+            if (orbits != null) {
+                for (int k = 0; k < samples; ++k) {
+                    if (n[k] < iterations)
+                        orbits.clear(rows[owner[k]] * viewport.width + columns[owner[k]]);
+                }
+            }
+
+            for (int r = 0; r < count; ++r)
+                store(columns[r], rows[r], sum[r], gnu[r], limited[r]);
+        }
+
+        /**
+         * Computes the exact value of point by the algorithm suitable for
+         * actual size of sector.
+         *
+         * @see #comPoint(Viewport, int, int, double, double, int, double[])
+         */
+        private double sample(int i, int j, double tx, double ty,
+                int iterations, double[] tempData) {
+            Orbits orbits = offsets.length == 1 ? Set.this.orbits : null;
+            int index = j * viewport.width + i;
+            if (orbits != null && resumedFrom > 0 && orbits.isProven(index)) {
+                tempData[j] += iterations;
+                return 1;
+            }
+            if (perturbation != null) {
+                if (orbits != null)
+                    orbits.clear(index);
+                return perturbation.comPoint(i, j, tx, ty, iterations, tempData, iterationsDone);
+            }
+            return comPoint(viewport, i, j, tx, ty, iterations, tempData, orbits, resumedFrom, iterationsDone);
+        }
+
         /**
          * Computes the exact value of point.
          * Implements standard algorithm for computation of mandelbrot set.
+         * Points in the main cardioid and in the period-2 bulb are recognized
+         * analytically. Other interior points are recognized when their orbit
+         * returns to an already visited point, which is checked by Brent's cycle
+         * detection. Both are counted as if they reached the iteration limit.
          *
+         * @param viewport   the sector
          * @param i          x position of point in array
          * @param j          y position of point in array
          * @param tx         shift in x axis
@@ -75,41 +504,396 @@ class Set {
          * @param tempData   template array for storing results
          * @return this value is used in linear approximation of color
          */
-        private static double comPoint(int i, int j, double tx, double ty,
+        static double comPoint(Viewport viewport, int i, int j, double tx, double ty,
                 int iterations, double[] tempData) {
+            return comPoint(viewport, i, j, tx, ty, iterations, tempData, null, 0, null);
+        }
+
+        /**
+         * Computes the exact value of point and keeps the state of its orbit.
+         * If the orbit of point stopped at the limit of previous computation,
+         * it continues from there, the result is the same as if it was
+         * computed from the beginning.
+         *
+         * @param viewport   the sector
+         * @param i          x position of point in array
+         * @param j          y position of point in array
+         * @param tx         shift in x axis
+         * @param ty         shift in y axis
+         * @param iterations number of iteration to use
+         * @param tempData   template array for storing results
+         * @param orbits     states of orbits, null if they are not kept
+         * @param from       iteration limit the stopped orbits reached, zero if
+         *                   all orbits start from the beginning
+         * @param work       counter the iterations really computed are added
+         *                   to, null if they are not counted
+         * @return this value is used in linear approximation of color
+         * @see Orbits
+         */
+        static double comPoint(Viewport viewport, int i, int j, double tx, double ty,
+                int iterations, double[] tempData, Orbits orbits, int from, long[] work) {
             double x0, y0;
-            x0 = ((i + tx) / Global.width) * Global.sizeX + startPointX;
-            y0 = ((j + ty) / Global.height) * Global.sizeY - startPointY;
+            x0 = ((i + tx) / viewport.width) * viewport.sizeX + viewport.startPointX;
+            y0 = ((j + ty) / viewport.height) * viewport.sizeY - viewport.startPointY;
+            int index = j * viewport.width + i;
+            if (isInBulbs(x0, y0)) {
+                if (orbits != null)
+                    orbits.prove(index);
+                tempData[j] += iterations;
+                return 1;
+            }
+
             double mx = 0, my = 0, px;
+            double sx = 0, sy = 0;
             long n = 0;
+            if (orbits != null && from > 0 && from <= iterations && orbits.isStopped(index)) {
+                mx = orbits.x[index];
+                my = orbits.y[index];
+                sx = orbits.savedX[index];
+                sy = orbits.savedY[index];
+                n = from;
+            }
+            long start = n;
+            long power = Orbits.power(n), lambda = Orbits.lambda(n);
+            double tolerance = viewport.getPeriodicityTolerance();
+            boolean periodic = false;
             while (n < iterations && mx * mx + my * my < 4) {
                 px = mx * mx - my * my + x0;
                 my = 2 * mx * my + y0;
                 mx = px;
                 n++;
+
+                if (abs(mx - sx) < tolerance && abs(my - sy) < tolerance) {
+                    periodic = true;
+                    break;
+                }
+                if (++lambda == power) {
+                    sx = mx;
+                    sy = my;
+                    power <<= 1;
+                    lambda = 0;
+                }
             }
+            if (work != null)
+                work[0] += n - start;
+            if (periodic)
+                n = iterations;
             double nu = 1;
             if (n < iterations) {
                 double log_zn = log(mx * mx + my * my) / 2;
                 nu = log(log_zn / log(2)) / log(2);
+                if (orbits != null)
+                    orbits.clear(index);
+            } else if (orbits != null) {
+                if (periodic)
+                    orbits.prove(index);
+                else
+                    orbits.stop(index, mx, my, sx, sy);
             }
             tempData[j] += n;
             return nu;
         }
 
-        private int startData, endData;
-        private static double startPointX, startPointY;
-        private static double[][] data;
+        /**
+         * Tests if point lies in the main cardioid or in the period-2 bulb.
+         *
+         * @param x0 real part of point
+         * @param y0 imaginary part of point
+         * @return true if point surely belongs to the set
+         */
+        static boolean isInBulbs(double x0, double y0) {
+            double y2 = y0 * y0;
+            double q = (x0 - 0.25) * (x0 - 0.25) + y2;
+            if (q * (q + (x0 - 0.25)) <= 0.25 * y2)
+                return true;
+            return (x0 + 1) * (x0 + 1) + y2 <= 0.0625;
+        }
+
+        private final long generation;
+        private final int[] tile, region;
+        private final int stride, previousStride;
+        private final double[][] offsets;
+        private final boolean[] refine;
+        private final boolean marianiSilver;
+        private boolean bordered;
+        // an array, so the static computation of point can add to it
+        private final long[] iterationsDone = new long[1];
+        private static final long serialVersionUID = 1L;
+        private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+    }
+
+    /**
+     * Working arrays of one thread reused by all its tasks.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    private static class Buffers {
+
+        /**
+         * @param height height of canvas
+         * @return array for sums of one column
+         */
+        double[] column(int height) {
+            if (column == null || column.length < height)
+                column = new double[height];
+            return column;
+        }
+
+        /**
+         * Makes the arrays for samples and points long enough.
+         *
+         * @param samples number of samples
+         * @param points  number of points
+         */
+        void reserve(int samples, int points) {
+            if (x0 == null || x0.length < samples) {
+                x0 = new double[samples];
+                y0 = new double[samples];
+                n = new double[samples];
+                nu = new double[samples];
+                owner = new int[samples];
+            }
+            if (orbit == null || orbit[0].length < samples)
+                orbit = new double[4][samples];
+            if (sum == null || sum.length < points) {
+                sum = new double[points];
+                gnu = new double[points];
+                limited = new boolean[points];
+            }
+        }
+
+        private double[] column, x0, y0, n, nu, sum, gnu;
+        private double[][] orbit;
+        private boolean[] limited;
+        private int[] owner;
+    }
+
+    /**
+     * Computes the viewport in the calling thread and returns its points.
+     * Any number of renders may run at once, each of them has its own array.
+     *
+     * @param viewport the sector
+     * @return computed points
+     */
+    static Field render(Viewport viewport) {
+        Set set = new Set();
+        set.setConstruct(viewport, set.killThreads());
+        return set.field;
+    }
+
+    /**
+     * Computes the viewport like {@link #render(Viewport)}, but neither takes
+     * tiles from cache nor stores them there and does not record the frame
+     * to metrics. It is meant for auxiliary computations, which must not
+     * evict tiles or statistics of the shown frames.
+     *
+     * @param viewport the sector
+     * @return computed points
+     */
+    static Field renderAside(Viewport viewport) {
+        Set set = new Set();
+        set.setAside(true);
+        set.setConstruct(viewport, set.killThreads());
+        return set.field;
+    }
+
+    /**
+     * Turns use of the cache of tiles and recording of frames to metrics off
+     * or on, see {@link #renderAside(Viewport)}.
+     * It may be called only when no computation runs.
+     *
+     * @param aside if the computations are aside
+     */
+    void setAside(boolean aside) {
+        shared = !aside;
+    }
+
+    /**
+     * Takes points of tiles found in cache unless the computation is aside.
+     *
+     * @param view position of canvas on the grid of cached tiles
+     * @return regions which have to be computed
+     */
+    private int[][] restore(TileCache.View view) {
+        if (!shared)
+            return new int[][]{{0, viewport.width, 0, viewport.height}};
+        return tileCache.restore(view, field);
     }
 
     /**
      * Initials array of points and starts computation.
-     * A new array is constructed due to it is ready to provides resizing of canvas
-     * in GUI.
+     * The array is allocated again only if the size of canvas changed. The
+     * points of tiles found in cache are not computed again. The method
+     * returns when the computation is done or cancelled.
+     *
+     * @param viewport    the sector
+     * @param computation generation of the computation, see {@link #killThreads()}
+     */
+    void setConstruct(Viewport viewport, long computation) {
+        long start = System.nanoTime();
+        this.viewport = viewport;
+        resumable = null;
+        int width = viewport.width, height = viewport.height;
+        if (field.resize(width, height))
+            refine = new boolean[width * height];
+        if (orbits != null) {
+            orbits.resize(width, height);
+            if (limitedPoints == null || limitedPoints.length != width * height) {
+                limitedPoints = new boolean[width * height];
+                refined = new boolean[width * height];
+            }
+        }
+        TileCache.View view = new TileCache.View(viewport);
+        int[][] regions = restore(view);
+        computeRegions(regions, view, System.nanoTime() - start, computation);
+
+        boolean whole = regions.length == 1 && regions[0][1] - regions[0][0] == width
+                && regions[0][3] - regions[0][2] == height;
+        if (complete && orbits != null && whole && !viewport.marianiSilver)
+            resumable = viewport;
+    }
+
+    /**
+     * Computes the viewport whose iteration limit was raised.
+     * If the previous computation was a complete computation of the same
+     * sector with a lower limit, only points which reached the limit are
+     * computed again and the orbits of their centers continue from where they
+     * stopped, see {@link Orbits}. Samples of antialiasing are computed again
+     * only for points which need them with the new limit and whose previous
+     * samples are not valid. The result is equal to {@link #setConstruct(Viewport, long)},
+     * which is used in any other case.
+     *
+     * @param viewport    the sector with the raised limit
+     * @param computation generation of the computation, see {@link #killThreads()}
+     * @see #setResumable(boolean)
+     */
+    void setConstructResumed(Viewport viewport, long computation) {
+        Viewport previous = resumable;
+        if (!viewport.raisesIterationsOf(previous)) {
+            setConstruct(viewport, computation);
+            return;
+        }
+
+        long start = System.nanoTime();
+        this.viewport = viewport;
+        resumable = null;
+        finals.copyFrom(field);
+        TileCache.View view = new TileCache.View(viewport);
+        computeResumed(previous.iterations, view, System.nanoTime() - start, computation);
+        if (complete)
+            resumable = viewport;
+    }
+
+    /**
+     * Turns keeping of orbits for {@link #setConstructResumed(Viewport, long)} on
+     * or off. It costs five arrays of the size of canvas, so it is off by
+     * default.
+     * It may be called only when no computation runs.
+     *
+     * @param resumable if the orbits are kept
+     */
+    void setResumable(boolean resumable) {
+        orbits = resumable ? new Orbits() : null;
+        spareOrbits = resumable ? new Orbits() : null;
+        limitedPoints = null;
+        refined = null;
+        this.resumable = null;
+    }
+
+    /**
+     * Computes the viewport zoomed from the previous one.
+     * If the previous computation was a complete computation of the sector
+     * zoomed by a power of two and the pixels of both lie on a common grid,
+     * the points lying on the previous grid are not computed again, so zoom
+     * out by two computes only three quarters of points. Otherwise it is
+     * the same as {@link #setConstruct(Viewport, long)}.
+     *
+     * @param viewport    the zoomed sector
+     * @param computation generation of the computation, see {@link #killThreads()}
+     * @see #getReusableViewport()
+     */
+    void setConstructZoomed(Viewport viewport, long computation) {
+        Viewport previous = resumable;
+        boolean adaptive = viewport.adaptiveSampling || viewport.samples == 1;
+        if (!adaptive || viewport.scaleExponent(previous) == 0) {
+            setConstruct(viewport, computation);
+            return;
+        }
+        double[] offset = viewport.gridOffset(previous);
+        if (abs(offset[0] - rint(offset[0])) > alignmentTolerance
+                || abs(offset[1] - rint(offset[1])) > alignmentTolerance) {
+            setConstruct(viewport, computation);
+            return;
+        }
+
+        long start = System.nanoTime();
+        this.viewport = viewport;
+        resumable = null;
+        TileCache.View view = new TileCache.View(viewport);
+        int[][] regions = restore(view);
+        if (regions.length != 1 || regions[0][1] - regions[0][0] != viewport.width
+                || regions[0][3] - regions[0][2] != viewport.height) {
+            computeRegions(regions, view, System.nanoTime() - start, computation);
+            return;
+        }
+        computeZoomed(previous, offset, view, System.nanoTime() - start, computation);
+        if (complete)
+            resumable = viewport;
+    }
+
+    /**
+     * @return sector of the last complete computation whose points can be
+     * continued or reused, null if there is none
+     */
+    Viewport getReusableViewport() {
+        return resumable;
+    }
+
+    /**
+     * Chooses the algorithm according to actual size of sector.
+     * If pixel is smaller than double can distinguish, the perturbation
+     * theory is used, its reference orbit is computed here.
+     */
+    private void prepareComputation(long current) {
+        if (viewport.getPixel() < perturbationThreshold)
+            perturbation = new Perturbation(viewport, viewport.iterations, () -> isCancelled(current));
+        else
+            perturbation = null;
+    }
+
+    /**
+     * Translates array of points and computes only the uncovered part.
+     * The columns are moved by <code>dx</code> and each column is shifted by
+     * <code>dy</code>, so the point which was drawn at <code>[i + dx][j + dy]</code>
+     * lands at <code>[i][j]</code>. Only the strips exposed by the translation are
+     * sent to computation. The center of the viewport has to be moved by the
+     * same number of pixels from the previous one. If the previous computation
+     * was not completed, the whole array is computed again.
+     *
+     * @param viewport    the translated sector
+     * @param dx          translation in x axis in pixels
+     * @param dy          translation in y axis in pixels
+     * @param computation generation of the computation, see {@link #killThreads()}
      */
-    static void setConstruct() {
-        data = new double[Global.width][Global.height];
-        fillCanvas();
+    void setConstructTranslated(Viewport viewport, int dx, int dy, long computation) {
+        int width = viewport.width, height = viewport.height;
+        if (!complete || !field.hasSize(width, height) || abs(dx) >= width || abs(dy) >= height) {
+            setConstruct(viewport, computation);
+            return;
+        }
+
+        long start = System.nanoTime();
+        this.viewport = viewport;
+        resumable = null;
+        field.translate(dx, dy);
+
+        int keptStart = max(0, -dx), keptEnd = min(width, width - dx);
+        int[][] regions = {
+                {0, keptStart, 0, height},
+                {keptEnd, width, 0, height},
+                {keptStart, keptEnd, dy > 0 ? height - dy : 0, dy > 0 ? height : max(-dy, 0)}};
+        computeRegions(regions, new TileCache.View(viewport), System.nanoTime() - start, computation);
     }
 
     /**
@@ -120,10 +904,10 @@ class Set {
      * @param j y coordinates
      * @return value of point at given coordinates
      */
-    static double getValueError(int i, int j) {
-        if (i < 0 || i >= Global.width || j < 0 || j >= Global.height)
+    double getValueError(int i, int j) {
+        if (i < 0 || i >= field.getWidth() || j < 0 || j >= field.getHeight())
             return -1;
-        return data[i][j];
+        return field.get(i, j);
     }
 
     /**
@@ -133,44 +917,506 @@ class Set {
      * @param j y coordinates
      * @return value of point at given coordinates
      */
-    static double getValue(int i, int j) {
-        return data[i][j];
+    double getValue(int i, int j) {
+        return field.get(i, j);
+    }
+
+    /**
+     * @return the sector of the last computation, null before the first one
+     */
+    Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * @return array of points, it is changed by the next computation
+     */
+    Field getField() {
+        return field;
+    }
+
+    /**
+     * Tests if incubating vector module was added to the application.
+     * It has to be checked before {@link VectorKernel} is loaded.
+     *
+     * @return true if module <code>jdk.incubator.vector</code> is present
+     */
+    static boolean isVectorModulePresent() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
     }
 
     /**
      * Stops the all threads processing the task.
+     * It starts a new generation of computation, the threads of older
+     * generations stop as soon as they notice it. The points computed so far are
+     * not complete and cannot be reused. A computation has to be started with
+     * the generation returned by the latest call.
+     *
+     * @return the new generation
      */
-    static void killThreads() {
-        executor.shutdownNow();
+    long killThreads() {
+        return generation.incrementAndGet();
     }
 
     /**
-     * Main method manages distribution of tasks.
-     * It runs thread using the ThreadPoolExecutor and create thread that computes
-     * values of point in given range.
+     * Tests if computation of given generation was stopped.
+     *
+     * @param computation generation of the computation
+     * @return true if a newer generation was started
      */
-    private static void fillCanvas() {
-        int subArraysForOneThread = 30;
-        int threadsCount = Runtime.getRuntime().availableProcessors();
+    boolean isCancelled(long computation) {
+        return generation.get() != computation;
+    }
 
-        executor = new ThreadPoolExecutor(threadsCount + 4,
-                threadsCount + threadsCount, 1,
-                TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    /**
+     * Sets listener notified after every pass of computation.
+     * It is called from the thread computing the set with the generation of the
+     * computation, when the whole array of points holds values at least as a
+     * preview.
+     *
+     * @param listener the action to run
+     */
+    void setPassListener(LongConsumer listener) {
+        passListener = listener;
+    }
+
+    /**
+     * Returns how well the threads were used by the last finished computation.
+     *
+     * @return time spent computing points divided by the time of computation
+     * multiplied by the number of threads
+     */
+    double getUtilization() {
+        return utilization;
+    }
+
+    /**
+     * @return number of threads computing the set
+     */
+    static int getParallelism() {
+        return executor.getParallelism();
+    }
+
+    /**
+     * @return cache of computed tiles
+     */
+    static TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Computes points in given regions of array.
+     * The regions are computed progressively, first only every fourth point of
+     * every fourth row, then every second point and then all points, each point
+     * once in the center of pixel. After each pass the listener is notified, so
+     * a preview can be drawn.
+     * <p>
+     * If adaptive antialiasing is on, points differing from their neighbours
+     * by more than the sampling threshold are computed again with all
+     * samples. Otherwise all samples of every point are computed in the last
+     * pass. If Mariani-Silver subdivision is on, the progressive passes are
+     * replaced by one pass of Mariani-Silver subdivision. The tiles of completed computation are stored in cache.
+     * The time of every stage is recorded to {@link RenderMetrics}.
+     *
+     * @param regions     regions given as first column, last column, first row
+     *                    and last row
+     * @param view        position of canvas on the grid of cached tiles
+     * @param restoreTime time spent preparing the array before computation
+     * @param current     generation of the computation
+     */
+    private void computeRegions(int[][] regions, TileCache.View view, long restoreTime, long current) {
+        long startTime = startComputation(current);
+        long passStart = System.nanoTime();
+        double[][] center = samplingGrid(1);
+        double[][] grid = samplingGrid(viewport.samples);
+        boolean adaptive = viewport.adaptiveSampling || grid.length == 1;
 
-        for (int i = 0; i < Global.width; i += subArraysForOneThread) {
-            int end = i + subArraysForOneThread;
-            if (end > Global.width)
-                end = Global.width;
-            executor.submit(new ThreadSet(i, end, data));
+        if (viewport.marianiSilver) {
+            computePass(regions, 1, 0, adaptive ? center : grid, null, true, current);
+            if (isCancelled(current))
+                return;
+            if (adaptive)
+                passListener.accept(current);
+        } else {
+            int previousStride = 0;
+            for (int stride = progressiveStride; stride >= 1; stride /= 2) {
+                if (stride == 1 && !adaptive)
+                    break;
+                computePass(regions, stride, previousStride, center, null, false, current);
+                previousStride = stride;
+                if (isCancelled(current))
+                    return;
+                passListener.accept(current);
+            }
+            if (!adaptive)
+                computePass(regions, 1, 0, grid, null, false, current);
+        }
+
+        long antialiasingStart = System.nanoTime();
+        if (orbits != null && adaptive)
+            centers.copyFrom(field);
+        if (adaptive && grid.length > 1) {
+            markDiffering(regions);
+            if (orbits != null)
+                System.arraycopy(refine, 0, refined, 0, refine.length);
+            computePass(regions, 1, 0, grid, refine, false, current);
+        }
+        finishComputation(view, restoreTime, startTime, passStart, antialiasingStart, grid.length > 1, current);
+    }
+
+    /**
+     * Computes again points of the previous computation which reached its
+     * limit.
+     * With adaptive antialiasing the centers of points which reached the
+     * limit are continued and the new centers decide which points need all
+     * samples. Points whose samples were computed before and none of them
+     * reached the limit keep their values. Otherwise all samples of points
+     * which reached the limit are computed again.
+     *
+     * @param from        the iteration limit of the previous computation
+     * @param view        position of canvas on the grid of cached tiles
+     * @param restoreTime time spent preparing the array before computation
+     * @param current     generation of the computation
+     */
+    private void computeResumed(int from, TileCache.View view, long restoreTime, long current) {
+        int points = viewport.width * viewport.height;
+        boolean[] unresolved = new boolean[points];
+        if (!viewport.adaptiveSampling && viewport.samples > 1) {
+            long startTime = startComputation(current);
+            long passStart = System.nanoTime();
+            System.arraycopy(limitedPoints, 0, unresolved, 0, points);
+            computePass(new int[][]{{0, viewport.width, 0, viewport.height}}, 1, 0,
+                    samplingGrid(viewport.samples), unresolved, false, current);
+            finishComputation(view, restoreTime, startTime, passStart, passStart, true, current);
+            return;
+        }
+
+        boolean[] reusable = new boolean[points];
+        for (int index = 0; index < points; ++index) {
+            unresolved[index] = centers.getCount(index) >= from;
+            reusable[index] = refined[index] && !limitedPoints[index];
+        }
+        field.copyFrom(centers);
+        computeCenters(null, unresolved, from, reusable, view, restoreTime, current);
+    }
+
+    /**
+     * Computes the viewport zoomed by a power of two from the previous one,
+     * whose points lie on its grid.
+     * The centers of points lying on the previous grid are taken from the
+     * previous computation. Their values are the same with any limit unless
+     * they reached it, points which reached the lower of both limits are
+     * limited by the new one or continued from their orbits. The other points
+     * are computed and the new centers decide which points need all samples.
+     *
+     * @param previous    the previous viewport
+     * @param offset      position of the first point on the grid of the finer
+     *                    of both viewports, see {@link Viewport#gridOffset(Viewport)}
+     * @param view        position of canvas on the grid of cached tiles
+     * @param restoreTime time spent preparing the array before computation
+     * @param current     generation of the computation
+     */
+    private void computeZoomed(Viewport previous, double[] offset, TileCache.View view,
+            long restoreTime, long current) {
+        int width = viewport.width, height = viewport.height;
+        int from = previous.iterations, iterations = viewport.iterations;
+        int newStep = max(1, (int) round(viewport.sizeX / previous.sizeX));
+        int oldStep = max(1, (int) round(previous.sizeX / viewport.sizeX));
+        long originX = (long) rint(offset[0]), originY = (long) rint(offset[1]);
+
+        Orbits next = spareOrbits;
+        next.resize(width, height);
+        next.clearAll();
+        boolean[] fresh = new boolean[width * height], continued = new boolean[width * height];
+        for (int j = 0; j < height; ++j) {
+            long y = originY + (long) j * newStep;
+            for (int i = 0; i < width; ++i) {
+                long x = originX + (long) i * newStep;
+                int index = j * width + i;
+                if (floorMod(x, oldStep) != 0 || floorMod(y, oldStep) != 0
+                        || x < 0 || x / oldStep >= width || y < 0 || y / oldStep >= height) {
+                    fresh[index] = true;
+                    continue;
+                }
+                int old = (int) (y / oldStep) * width + (int) (x / oldStep);
+                int count = centers.getCount(old);
+                if (count < min(from, iterations)) {
+                    field.copy(centers, old, index);
+                    limitedPoints[index] = false;
+                } else if (orbits.isProven(old) || iterations <= from) {
+                    field.set(i, j, iterations, 0);
+                    limitedPoints[index] = true;
+                    if (orbits.isProven(old))
+                        next.prove(index);
+                } else if (orbits.isStopped(old)) {
+                    next.copy(orbits, old, index);
+                    continued[index] = true;
+                } else {
+                    fresh[index] = true;
+                }
+            }
         }
+        spareOrbits = orbits;
+        orbits = next;
+        computeCenters(fresh, continued, from, null, view, restoreTime, current);
+    }
 
-        executor.shutdown();
+    /**
+     * Computes the centers of given points, the others already hold their
+     * centers, and then the samples of points which need them.
+     *
+     * @param fresh       points computed from the beginning, null if none
+     * @param continued   points whose orbits are continued, null if none
+     * @param from        iteration limit the orbits stopped at
+     * @param reusable    points keeping their previous values if they need all
+     *                    samples, null if none
+     * @param view        position of canvas on the grid of cached tiles
+     * @param restoreTime time spent preparing the array before computation
+     * @param current     generation of the computation
+     */
+    private void computeCenters(boolean[] fresh, boolean[] continued, int from, boolean[] reusable,
+            TileCache.View view, long restoreTime, long current) {
+        long startTime = startComputation(current);
+        long passStart = System.nanoTime();
+        int[][] whole = {{0, viewport.width, 0, viewport.height}};
+        double[][] center = samplingGrid(1);
+        double[][] grid = samplingGrid(viewport.samples);
+        if (fresh != null)
+            computePass(whole, 1, 0, center, fresh, false, current);
+        if (continued != null) {
+            resumedFrom = from;
+            computePass(whole, 1, 0, center, continued, false, current);
+            resumedFrom = 0;
+        }
+        if (isCancelled(current))
+            return;
+        centers.copyFrom(field);
+        passListener.accept(current);
 
-        while (!executor.isTerminated()) {
-            Thread.yield();
+        long antialiasingStart = System.nanoTime();
+        if (grid.length > 1) {
+            markDiffering(whole);
+            for (int index = 0; index < refine.length; ++index) {
+                if (refine[index] && reusable != null && reusable[index]) {
+                    field.copy(finals, index, index);
+                    limitedPoints[index] = false;
+                    refine[index] = false;
+                    refined[index] = true;
+                } else {
+                    refined[index] = refine[index];
+                }
+            }
+            computePass(whole, 1, 0, grid, refine, false, current);
         }
+        finishComputation(view, restoreTime, startTime, passStart, antialiasingStart, grid.length > 1, current);
     }
 
-    private static ThreadPoolExecutor executor;
-    private static double[][] data;
+    /**
+     * Resets statistics of computation and prepares the algorithm.
+     *
+     * @param current generation of the computation
+     * @return start of computation
+     */
+    private long startComputation(long current) {
+        complete = false;
+        long startTime = System.nanoTime();
+        busyTime.reset();
+        longestTile.reset();
+        tiles.reset();
+        iterationCount.reset();
+        prepareComputation(current);
+        return startTime;
+    }
+
+    /**
+     * Marks completion of computation, stores its tiles in cache and records
+     * its metrics.
+     *
+     * @param view              position of canvas on the grid of cached tiles
+     * @param restoreTime       time spent preparing the array before computation
+     * @param startTime         start of computation
+     * @param passStart         start of the first pass
+     * @param antialiasingStart start of antialiasing
+     * @param notify            if the listener has to be notified
+     * @param current           generation of the computation
+     */
+    private void finishComputation(TileCache.View view, long restoreTime, long startTime, long passStart,
+            long antialiasingStart, boolean notify, long current) {
+        if (isCancelled(current))
+            return;
+        complete = true;
+        long storeStart = System.nanoTime();
+        utilization = busyTime.sum() / ((double) (storeStart - startTime) * executor.getParallelism());
+        if (shared) {
+            tileCache.store(view, field);
+            RenderMetrics.recordFrame(viewport, new FrameStats(restoreTime, passStart - startTime,
+                    antialiasingStart - passStart, storeStart - antialiasingStart, System.nanoTime() - storeStart,
+                    iterationCount.sum(), tiles.sum(), busyTime.sum(), longestTile.get(), utilization));
+        }
+        if (notify)
+            passListener.accept(current);
+    }
+
+    /**
+     * Computes one pass over given regions and waits until it is done.
+     *
+     * @param regions        regions given as first column, last column, first
+     *                       row and last row
+     * @param stride         distance of computed points
+     * @param previousStride stride of already computed points, zero if none
+     * @param offsets        positions of samples inside of pixel
+     * @param refine         if not null only marked points are computed
+     * @param marianiSilver  if the regions are computed by Mariani-Silver
+     *                       subdivision
+     * @param current        generation of the computation
+     */
+    private void computePass(int[][] regions, int stride, int previousStride,
+            double[][] offsets, boolean[] refine, boolean marianiSilver, long current) {
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int[] region : regions)
+            submitTiles(region, stride, previousStride, offsets, refine, marianiSilver, current, tasks);
+        await(tasks);
+    }
+
+    /**
+     * Marks points of given regions whose value differs from any of their
+     * neighbours by more than the sampling threshold, in parallel.
+     *
+     * @param regions regions given as first column, last column, first row
+     *                and last row
+     */
+    private void markDiffering(int[][] regions) {
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int[] region : regions) {
+            for (int i = region[0]; i < region[1]; i += subArraysForOneThread) {
+                int start = i, end = min(i + subArraysForOneThread, region[1]);
+                tasks.add(executor.submit(() -> markDiffering(start, end, region[2], region[3])));
+            }
+        }
+        await(tasks);
+    }
+
+    /**
+     * Marks points whose value differs from any of their neighbours by more
+     * than the sampling threshold.
+     *
+     * @param start    first column
+     * @param end      last column
+     * @param startRow first row
+     * @param endRow   last row
+     */
+    private void markDiffering(int start, int end, int startRow, int endRow) {
+        double threshold = viewport.samplingThreshold;
+        int width = viewport.width, height = viewport.height;
+        for (int i = start; i < end; ++i) {
+            for (int j = startRow; j < endRow; ++j) {
+                double value = field.get(i, j);
+                refine[j * width + i] = (i > 0 && abs(value - field.get(i - 1, j)) > threshold)
+                        || (i + 1 < width && abs(value - field.get(i + 1, j)) > threshold)
+                        || (j > 0 && abs(value - field.get(i, j - 1)) > threshold)
+                        || (j + 1 < height && abs(value - field.get(i, j + 1)) > threshold);
+            }
+        }
+    }
+
+    /**
+     * Returns positions of samples inside of pixel forming regular grid.
+     *
+     * @param samples number of samples, it has to be square
+     * @return shifts in x and y axis of every sample
+     */
+    private static double[][] samplingGrid(int samples) {
+        int side = (int) round(sqrt(samples));
+        double[][] grid = new double[side * side][];
+        for (int k = 0; k < grid.length; ++k)
+            grid[k] = new double[]{(k / side + 0.5) / side, (k % side + 0.5) / side};
+        return grid;
+    }
+
+    /**
+     * Submits the task computing given region to the executor, the task splits
+     * itself to tiles.
+     *
+     * @param region         first column, last column, first row and last row
+     * @param stride         distance of computed points
+     * @param previousStride stride of already computed points, zero if none
+     * @param offsets        positions of samples inside of pixel
+     * @param refine         if not null only marked points are computed
+     * @param marianiSilver  if the region is computed by Mariani-Silver
+     *                       subdivision
+     * @param current        generation of the computation
+     * @param tasks          list the submitted tasks are added to
+     */
+    private void submitTiles(int[] region, int stride, int previousStride, double[][] offsets,
+            boolean[] refine, boolean marianiSilver, long current, List<Future<?>> tasks) {
+        if (region[0] >= region[1] || region[2] >= region[3])
+            return;
+
+        tasks.add(executor.submit(new ThreadSet(region, region, stride, previousStride,
+                offsets, refine, marianiSilver, current)));
+    }
+
+    /**
+     * Waits until all given tasks are done.
+     *
+     * @param tasks submitted tasks
+     * @throws IllegalStateException if any of tasks failed
+     */
+    private static void await(List<Future<?>> tasks) {
+        try {
+            for (Future<?> task : tasks)
+                task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Computation of the set failed", e.getCause());
+        }
+    }
+
+    /**
+     * Creates the pool of threads shared by all computations.
+     *
+     * @return work stealing executor with daemon threads
+     */
+    private static ForkJoinPool createExecutor() {
+        int threadsCount = Runtime.getRuntime().availableProcessors();
+
+        return new ForkJoinPool(threadsCount, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("set-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    private static int subArraysForOneThread = 30;
+    private static int progressiveStride = 4;
+    private static int minTilePoints = 256;
+    private static int maxTilePoints = 4096;
+    private static int surplusTasks = 2;
+    private static final ForkJoinPool executor = createExecutor();
+    private static final TileCache tileCache = new TileCache();
+    private static double perturbationThreshold = 1e-13;
+    private static double alignmentTolerance = 1e-3;
+    private static boolean vectorized = isVectorModulePresent() && VectorKernel.isAvailable();
+
+    private final LongAdder busyTime = new LongAdder();
+    private final LongAccumulator longestTile = new LongAccumulator(Math::max, 0);
+    private final LongAdder tiles = new LongAdder();
+    private final LongAdder iterationCount = new LongAdder();
+    private volatile double utilization;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean complete;
+    private volatile LongConsumer passListener = computation -> {
+    };
+    private final Field field = new Field();
+    private boolean shared = true;
+    private boolean[] refine;
+    private Orbits orbits, spareOrbits;
+    private final Field centers = new Field(), finals = new Field();
+    private boolean[] limitedPoints, refined;
+    private volatile Viewport resumable;
+    private int resumedFrom;
+    private volatile Viewport viewport;
+    private volatile Perturbation perturbation;
 }
@@ -0,0 +1,280 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.*;
+
+/**
+ * Keeps computed points as square tiles of a grid anchored in the origin of
+ * the complex plane.
+ * Tile <code>[x][y]</code> of scale with pixel size <code>p</code> covers the
+ * points from <code>x * tileSize * p</code> to <code>(x + 1) * tileSize * p</code>,
+ * so the tiles of scales differing by powers of two form a quadtree. Tiles are
+ * reused only if the canvas lies on the same grid of pixels, which happens
+ * when the set is translated by whole pixels or a previous view is returned
+ * to. The least recently used tiles are evicted when the cache exceeds its
+ * memory budget.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class TileCache {
+
+    /**
+     * Position of canvas on the grid of tiles with all parameters the values
+     * of points depend on.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    static class View {
+
+        /**
+         * @param viewport the rendered sector
+         */
+        View(Viewport viewport) {
+            width = viewport.width;
+            height = viewport.height;
+            iterations = viewport.iterations;
+            samples = viewport.adaptiveSampling ? -viewport.samples : viewport.samples;
+            samplingThreshold = viewport.samplingThreshold;
+            marianiSilver = viewport.marianiSilver;
+            pixelX = quantize(viewport.sizeX / width);
+            pixelY = quantize(viewport.sizeY / height);
+
+            double x = viewport.startPointX / pixelX;
+            double y = -viewport.startPointY / pixelY;
+            cacheable = abs(x) < maxPosition && abs(y) < maxPosition;
+            long phaseX = round(x * phases), phaseY = round(y * phases);
+            originX = floorDiv(phaseX, phases);
+            originY = floorDiv(phaseY, phases);
+            phase = floorMod(phaseX, phases) * phases + floorMod(phaseY, phases);
+        }
+
+        /**
+         * @param x x coordinate of tile
+         * @param y y coordinate of tile
+         * @return key of the tile in cache
+         */
+        Key key(long x, long y) {
+            return new Key(this, x, y);
+        }
+
+        /**
+         * Rounds pixel size, so scales differing only by rounding errors are
+         * the same.
+         *
+         * @param pixel size of pixel
+         * @return the size of pixel with shortened mantissa
+         */
+        private static double quantize(double pixel) {
+            return Double.longBitsToDouble(Double.doubleToLongBits(pixel) & ~0xFFFL);
+        }
+
+        private final int width, height, iterations, samples;
+        private final double pixelX, pixelY, samplingThreshold;
+        private final long originX, originY, phase;
+        private final boolean cacheable, marianiSilver;
+    }
+
+    /**
+     * Identifies one tile.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    static class Key {
+
+        private Key(View view, long x, long y) {
+            pixelX = view.pixelX;
+            pixelY = view.pixelY;
+            phase = view.phase;
+            iterations = view.iterations;
+            samples = view.samples;
+            samplingThreshold = view.samplingThreshold;
+            marianiSilver = view.marianiSilver;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return pixelX == key.pixelX && pixelY == key.pixelY && phase == key.phase
+                    && iterations == key.iterations && samples == key.samples
+                    && samplingThreshold == key.samplingThreshold && marianiSilver == key.marianiSilver
+                    && x == key.x && y == key.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pixelX, pixelY, phase, iterations, samples, samplingThreshold, marianiSilver, x, y);
+        }
+
+        private final double pixelX, pixelY, samplingThreshold;
+        private final long phase, x, y;
+        private final int iterations, samples;
+        private final boolean marianiSilver;
+    }
+
+    /**
+     * Values of points of one tile.
+     *
+     * @author Filip Cizmar
+     * @version 1.0
+     */
+    private static class Tile {
+
+        private final int[] counts = new int[tileSize * tileSize];
+        private final float[] fractions = new float[tileSize * tileSize];
+    }
+
+    /**
+     * Copies all cached tiles visible on canvas to the array of points.
+     *
+     * @param view  position of canvas
+     * @param field array of points
+     * @return regions of canvas not covered by cached tiles given as first
+     * column, last column, first row and last row
+     */
+    int[][] restore(View view, Field field) {
+        int[][] whole = {{0, view.width, 0, view.height}};
+        if (!view.cacheable)
+            return whole;
+
+        List<int[]> missing = new ArrayList<>();
+        boolean hit = false;
+        for (long y = floorDiv(view.originY, tileSize); y * tileSize < view.originY + view.height; ++y) {
+            int top = (int) max(y * tileSize - view.originY, 0);
+            int bottom = (int) min((y + 1) * tileSize - view.originY, view.height);
+            int[] run = null;
+            for (long x = floorDiv(view.originX, tileSize); x * tileSize < view.originX + view.width; ++x) {
+                int left = (int) max(x * tileSize - view.originX, 0);
+                int right = (int) min((x + 1) * tileSize - view.originX, view.width);
+                Tile tile = get(view.key(x, y));
+                if (tile != null) {
+                    int offset = (int) ((top + view.originY - y * tileSize) * tileSize
+                            + left + view.originX - x * tileSize);
+                    field.write(left, top, right - left, bottom - top, tile.counts, tile.fractions, offset, tileSize);
+                    hit = true;
+                    run = null;
+                } else if (run != null) {
+                    run[1] = right;
+                } else {
+                    run = new int[]{left, right, top, bottom};
+                    missing.add(run);
+                }
+            }
+        }
+        return hit ? missing.toArray(new int[0][]) : whole;
+    }
+
+    /**
+     * Stores all tiles lying on canvas as a whole.
+     *
+     * @param view  position of canvas the points were computed for
+     * @param field array of points
+     */
+    void store(View view, Field field) {
+        if (!view.cacheable)
+            return;
+
+        for (long y = ceilDiv(view.originY, tileSize); (y + 1) * tileSize <= view.originY + view.height; ++y) {
+            for (long x = ceilDiv(view.originX, tileSize); (x + 1) * tileSize <= view.originX + view.width; ++x) {
+                Key key = view.key(x, y);
+                synchronized (this) {
+                    if (tiles.containsKey(key))
+                        continue;
+                }
+                Tile tile = new Tile();
+                field.read((int) (x * tileSize - view.originX), (int) (y * tileSize - view.originY),
+                        tileSize, tileSize, tile.counts, tile.fractions, 0, tileSize);
+                synchronized (this) {
+                    tiles.put(key, tile);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of tiles found in cache
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of tiles which were not found in cache
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Sets the memory budget and evicts tiles over it.
+     *
+     * @param bytes maximal memory used by tiles
+     */
+    synchronized void setBudget(long bytes) {
+        budget = bytes;
+        Iterator<Map.Entry<Key, Tile>> iterator = tiles.entrySet().iterator();
+        while (tiles.size() > maxTiles() && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes all tiles.
+     */
+    synchronized void clear() {
+        tiles.clear();
+    }
+
+    /**
+     * Finds tile in cache and counts the hit or miss.
+     *
+     * @param key key of the tile
+     * @return the tile or null if it is not cached
+     */
+    private synchronized Tile get(Key key) {
+        Tile tile = tiles.get(key);
+        (tile != null ? hits : misses).incrementAndGet();
+        return tile;
+    }
+
+    /**
+     * @return number of tiles fitting into the budget
+     */
+    private long maxTiles() {
+        return budget / (tileSize * tileSize * (Integer.BYTES + Float.BYTES));
+    }
+
+    /**
+     * Divides and rounds up.
+     */
+    private static long ceilDiv(long x, long y) {
+        return -floorDiv(-x, y);
+    }
+
+    private static int tileSize = 64;
+    private static int phases = 256;
+    private static double maxPosition = 1L << 40;
+
+    private long budget = 64L << 20;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private final Map<Key, Tile> tiles = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Tile> eldest) {
+            return size() > maxTiles();
+        }
+    };
+}
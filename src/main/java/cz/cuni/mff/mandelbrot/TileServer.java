@@ -0,0 +1,293 @@
+package cz.cuni.mff.mandelbrot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.lang.Math.*;
+
+/**
+ * Serves the set as PNG tiles <code>/z/x/y.png</code> over HTTP without GUI.
+ * The tiles form the usual quadtree of web maps, the only tile of level zero
+ * covers the square from <code>-2.5 - 2i</code> to <code>1.5 + 2i</code> and
+ * every level halves the size of tiles. The page <code>/</code> shows them in
+ * a browser.
+ * <p>
+ * Concurrent requests for the same tile wait for one render, at most as many
+ * tiles as there are cores are rendered at once and encoded tiles are kept in
+ * memory, so many users viewing the same area cost about the same as one.
+ * <p>
+ * Usage: <code>TileServer [port] [iterations]</code>
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class TileServer {
+
+    /**
+     * Parses arguments and starts the server.
+     *
+     * @param args port and base iterations, both optional
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length > 2)
+                throw new IllegalArgumentException("Wrong number of arguments");
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : defaultPort;
+            if (args.length > 1) {
+                int iterations = Integer.parseInt(args[1]);
+                if (iterations < 1)
+                    throw new IllegalArgumentException("Iterations have to be positive");
+                Global.setIterations(iterations);
+            }
+
+            new TileServer().start(port);
+            System.err.println("Serving tiles on http://localhost:" + port + "/");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: TileServer [port] [iterations]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Server failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Binds the server and starts serving requests in background threads.
+     * Tiles are rendered whole aside from the cache of computed points, which
+     * leaves the memory for encoded tiles.
+     *
+     * @param port port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    /**
+     * Stops the server and all its threads.
+     */
+    void stop() {
+        server.stop(0);
+        renderers.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    /**
+     * Answers one request.
+     * The tile is sent from cache, or when it is already being rendered for
+     * another request, the response waits for the same render.
+     *
+     * @param exchange the request
+     * @throws IOException if sending fails
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, "text/plain", "Only GET is supported".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/")) {
+            send(exchange, 200, "text/html", INDEX.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        Matcher matcher = TILE.matcher(path);
+        int level;
+        long x, y;
+        try {
+            if (!matcher.matches())
+                throw new NumberFormatException();
+            level = Integer.parseInt(matcher.group(1));
+            x = Long.parseLong(matcher.group(2));
+            y = Long.parseLong(matcher.group(3));
+        } catch (NumberFormatException e) {
+            level = -1;
+            x = y = 0;
+        }
+        if (level < 0 || level > maxLevel || x >= 1L << level || y >= 1L << level) {
+            send(exchange, 404, "text/plain", "No such tile".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        String key = level + "/" + x + "/" + y;
+        byte[] cached = getCached(key);
+        if (cached != null) {
+            send(exchange, 200, "image/png", cached);
+            return;
+        }
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> tile = rendering.putIfAbsent(key, created);
+        if (tile == null) {
+            tile = created;
+            submit(key, level, x, y, created);
+        }
+        tile.whenCompleteAsync((png, e) -> {
+            try {
+                if (png != null)
+                    send(exchange, 200, "image/png", png);
+                else
+                    send(exchange, 500, "text/plain", String.valueOf(e).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ignored) {
+                // the client has gone, the tile stays cached for others
+            }
+        }, handlers);
+    }
+
+    /**
+     * Renders tile in one of the render threads.
+     * The tile is cached before it stops being rendered, so every request
+     * finds it in one of them. It is looked up in cache once more, since it
+     * could be finished after the request missed the cache.
+     *
+     * @param key   path of tile
+     * @param level level of tile
+     * @param x     column of tile
+     * @param y     row of tile
+     * @param tile  future completed by the encoded tile
+     */
+    private void submit(String key, int level, long x, long y, CompletableFuture<byte[]> tile) {
+        byte[] cached = getCached(key);
+        if (cached != null) {
+            rendering.remove(key);
+            tile.complete(cached);
+            return;
+        }
+        renderers.execute(() -> {
+            try {
+                byte[] png = render(level, x, y);
+                putCached(key, png);
+                tile.complete(png);
+            } catch (RuntimeException e) {
+                tile.completeExceptionally(e);
+            } finally {
+                rendering.remove(key);
+            }
+        });
+    }
+
+    /**
+     * Renders and encodes one tile.
+     * The number of iterations grows with level as in GUI and colors wrap by
+     * the same base iterations, so the tiles look like the canvas.
+     *
+     * @param level level of tile
+     * @param x     column of tile
+     * @param y     row of tile, zero is the top one
+     * @return the tile as PNG
+     */
+    private byte[] render(int level, long x, long y) {
+        BigDecimal side = new BigDecimal(worldSize / (1L << level));
+        BigDecimal half = BigDecimal.valueOf(0.5);
+        BigDecimal centerX = BigDecimal.valueOf(worldLeft).add(side.multiply(half.add(BigDecimal.valueOf(x))));
+        BigDecimal centerY = BigDecimal.valueOf(worldTop).subtract(side.multiply(half.add(BigDecimal.valueOf(y))));
+        long zoom = max(1, round(Global.sizeOfZoom(1) / side.doubleValue()));
+        int iterations = Global.countIterations(zoom);
+        Viewport viewport = new Viewport(centerX, centerY, side.doubleValue(), side.doubleValue(),
+                tileSize, tileSize, iterations);
+
+        Field field = Set.renderAside(viewport);
+        int[] colors = new int[tileSize * tileSize];
+        Palette palette = palettes.computeIfAbsent(iterations, n -> new Palette(n, Global.getIterations(), 1, 1, 1));
+        Export.color(palette, field, colors, 0, tileSize);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try (PngWriter writer = new PngWriter(png, tileSize, tileSize)) {
+            writer.writeRows(colors, 0, tileSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return png.toByteArray();
+    }
+
+    /**
+     * @param key path of tile
+     * @return encoded tile or null if it is not cached
+     */
+    private synchronized byte[] getCached(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Caches encoded tile and evicts the least recently used tiles over the
+     * budget.
+     *
+     * @param key path of tile
+     * @param png encoded tile
+     */
+    private synchronized void putCached(String key, byte[] png) {
+        if (cache.put(key, png) == null)
+            cachedBytes += png.length;
+        Iterator<byte[]> iterator = cache.values().iterator();
+        while (cachedBytes > cacheBudget && iterator.hasNext()) {
+            cachedBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Sends the whole response and closes the exchange.
+     *
+     * @param exchange    the request
+     * @param status      HTTP status code
+     * @param contentType type of body
+     * @param body        body of response
+     * @throws IOException if sending fails
+     */
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (status == 200)
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=3600");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static final Pattern TILE = Pattern.compile("/(\\d{1,2})/(\\d{1,19})/(\\d{1,19})\\.png");
+    private static final String INDEX = "<!DOCTYPE html>\n<html><head><title>Mandelbrot Set</title>\n"
+            + "<link rel=\"stylesheet\" href=\"https://unpkg.com/leaflet@1.9.4/dist/leaflet.css\">\n"
+            + "<script src=\"https://unpkg.com/leaflet@1.9.4/dist/leaflet.js\"></script>\n"
+            + "<style>html, body, #map { height: 100%; margin: 0; }</style></head>\n"
+            + "<body><div id=\"map\"></div><script>\n"
+            + "var map = L.map('map', {crs: L.CRS.Simple, minZoom: 0, maxZoom: 40});\n"
+            + "L.tileLayer('/{z}/{x}/{y}.png', {noWrap: true, bounds: [[-256, 0], [0, 256]]}).addTo(map);\n"
+            + "map.setView([-128, 128], 1);\n"
+            + "</script></body></html>\n";
+
+    private static int defaultPort = 8080;
+    private static int tileSize = 256;
+    private static int maxLevel = 62;
+    private static double worldSize = 4, worldLeft = -2.5, worldTop = 2;
+    private static long cacheBudget = 256L << 20;
+    private static int handlerThreads = 16;
+
+    private HttpServer server;
+    private final ExecutorService renderers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final ExecutorService handlers = Executors.newFixedThreadPool(handlerThreads);
+    private final Map<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+    private final Map<Integer, Palette> palettes = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+}
@@ -0,0 +1,154 @@
+package cz.cuni.mff.mandelbrot;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import static java.lang.Math.*;
+
+/**
+ * Computes many points at once using SIMD instructions.
+ * Each lane of vector holds one point, lanes of escaped points are masked out
+ * and the computation of vector ends when all its points escaped.
+ * <p>
+ * The class uses incubating module <code>jdk.incubator.vector</code>, so it
+ * must not be touched unless the module is present, see
+ * {@link Set#isVectorModulePresent()}.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class VectorKernel {
+
+    /**
+     * Tests if the hardware offers vectors of at least two doubles.
+     *
+     * @return true if vectorized computation is worth using
+     */
+    static boolean isAvailable() {
+        return SPECIES.length() >= 2;
+    }
+
+    /**
+     * Computes the exact values of points.
+     * Implements the same algorithm as the scalar computation including the
+     * periodicity checking, so the results are equal.
+     *
+     * @param x0         real parts of points
+     * @param y0         imaginary parts of points
+     * @param count      number of points, the arrays have to be at least
+     *                   {@link #paddedLength(int)} long
+     * @param iterations number of iteration to use
+     * @param tolerance  tolerance of the cycle detection, see
+     *                   {@link Viewport#getPeriodicityTolerance()}
+     * @param n          output array for numbers of iterations
+     * @param nu         output array for values used in linear approximation of
+     *                   color
+     * @return number of iterations really computed, without the iterations
+     * of periodic points after they were recognized
+     */
+    static long comPoints(double[] x0, double[] y0, int count, int iterations, double tolerance,
+            double[] n, double[] nu) {
+        return comPoints(x0, y0, count, iterations, tolerance, n, nu, null);
+    }
+
+    /**
+     * Computes the exact values of points and keeps the last state of orbits.
+     * The state is written for points which reached the iteration limit, it
+     * is the last value of <code>z</code> and the value saved by the cycle
+     * detection, see {@link Orbits}. Points recognized as periodic get NaN.
+     *
+     * @param x0         real parts of points
+     * @param y0         imaginary parts of points
+     * @param count      number of points, the arrays have to be at least
+     *                   {@link #paddedLength(int)} long
+     * @param iterations number of iteration to use
+     * @param tolerance  tolerance of the cycle detection
+     * @param n          output array for numbers of iterations
+     * @param nu         output array for values used in linear approximation of
+     *                   color
+     * @param orbit      output arrays for real and imaginary parts of the last
+     *                   and the saved value, null if they are not needed
+     * @return number of iterations really computed
+     */
+    static long comPoints(double[] x0, double[] y0, int count, int iterations, double tolerance,
+            double[] n, double[] nu, double[][] orbit) {
+        int lanes = SPECIES.length();
+        for (int k = count; k < paddedLength(count); ++k) {
+            x0[k] = 4;
+            y0[k] = 0;
+        }
+
+        long work = 0;
+        for (int k = 0; k < count; k += lanes) {
+            DoubleVector cx = DoubleVector.fromArray(SPECIES, x0, k);
+            DoubleVector cy = DoubleVector.fromArray(SPECIES, y0, k);
+            DoubleVector mx = DoubleVector.zero(SPECIES), my = DoubleVector.zero(SPECIES);
+            DoubleVector sx = mx, sy = my;
+            DoubleVector steps = DoubleVector.zero(SPECIES);
+            VectorMask<Double> active = SPECIES.maskAll(true);
+            VectorMask<Double> periodic = SPECIES.maskAll(false);
+            int power = 1, lambda = 0;
+
+            for (int step = 0; step < iterations; ++step) {
+                DoubleVector mx2 = mx.mul(mx), my2 = my.mul(my);
+                active = active.and(mx2.add(my2).lt(4));
+                if (!active.anyTrue())
+                    break;
+
+                DoubleVector px = mx2.sub(my2).add(cx);
+                my = my.blend(mx.mul(2).mul(my).add(cy), active);
+                mx = mx.blend(px, active);
+                steps = steps.add(1, active);
+
+                VectorMask<Double> returned = mx.sub(sx).abs().max(my.sub(sy).abs())
+                        .lt(tolerance).and(active);
+                periodic = periodic.or(returned);
+                active = active.andNot(returned);
+
+                // vectors are assigned by blend, not in branches, so they are not boxed
+                VectorMask<Double> save = SPECIES.maskAll(++lambda == power);
+                sx = sx.blend(mx, save);
+                sy = sy.blend(my, save);
+                if (lambda == power) {
+                    power <<= 1;
+                    lambda = 0;
+                }
+            }
+
+            for (int l = 0; l < lanes && k + l < count; ++l)
+                work += (long) steps.lane(l);
+            steps = steps.blend((double) iterations, periodic);
+            steps.intoArray(n, k);
+            if (orbit != null) {
+                mx.blend(Double.NaN, periodic).intoArray(orbit[0], k);
+                my.intoArray(orbit[1], k);
+                sx.intoArray(orbit[2], k);
+                sy.intoArray(orbit[3], k);
+            }
+            DoubleVector abs2 = mx.mul(mx).add(my.mul(my));
+            for (int l = 0; l < lanes && k + l < count; ++l) {
+                if (n[k + l] < iterations) {
+                    double log_zn = log(abs2.lane(l)) / 2;
+                    nu[k + l] = log(log_zn / log(2)) / log(2);
+                } else {
+                    nu[k + l] = 1;
+                }
+            }
+        }
+        return work;
+    }
+
+    /**
+     * Returns length of arrays needed for given number of points.
+     *
+     * @param count number of points
+     * @return count rounded up to whole vectors
+     */
+    static int paddedLength(int count) {
+        int lanes = SPECIES.length();
+        return (count + lanes - 1) / lanes * lanes;
+    }
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+}
@@ -0,0 +1,199 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Immutable description of one rendered sector of the set.
+ * It holds everything the values of points depend on, so renders of
+ * different viewports can run at once, see {@link Set#render(Viewport)}.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+class Viewport {
+
+    /**
+     * Creates viewport with sampling taken from {@link Global} and without
+     * Mariani-Silver subdivision.
+     *
+     * @param centerX    real part of center
+     * @param centerY    imaginary part of center
+     * @param sizeX      width of sector in the complex plane
+     * @param sizeY      height of sector in the complex plane
+     * @param width      width of canvas in pixels
+     * @param height     height of canvas in pixels
+     * @param iterations maximal number of iterations of point
+     * @throws IllegalArgumentException if any of sizes or the iterations are
+     *                                  not positive
+     */
+    Viewport(BigDecimal centerX, BigDecimal centerY, double sizeX, double sizeY,
+            int width, int height, int iterations) {
+        this(centerX, centerY, sizeX, sizeY, width, height, iterations,
+                Global.getSamples(), Global.adaptiveSampling, Global.samplingThreshold, false);
+    }
+
+    private Viewport(BigDecimal centerX, BigDecimal centerY, double sizeX, double sizeY, int width, int height,
+            int iterations, int samples, boolean adaptiveSampling, double samplingThreshold,
+            boolean marianiSilver) {
+        if (width < 1 || height < 1 || !(sizeX > 0) || !(sizeY > 0))
+            throw new IllegalArgumentException("Size of viewport has to be positive");
+        if (iterations < 1)
+            throw new IllegalArgumentException("Iterations have to be positive");
+        if (samples != 1 && samples != 4 && samples != 9 && samples != 16)
+            throw new IllegalArgumentException("Unsupported number of samples: " + samples);
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.pointX = centerX.doubleValue();
+        this.pointY = centerY.doubleValue();
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.width = width;
+        this.height = height;
+        this.iterations = iterations;
+        this.samples = samples;
+        this.adaptiveSampling = adaptiveSampling;
+        this.samplingThreshold = samplingThreshold;
+        this.marianiSilver = marianiSilver;
+        this.startPointX = pointX - sizeX / 2;
+        this.startPointY = pointY + sizeY / 2;
+    }
+
+    /**
+     * Takes the sector actually shown in GUI.
+     *
+     * @return viewport with all parameters from {@link Global}
+     */
+    static Viewport fromGlobal() {
+        return new Viewport(Global.precisePointX, Global.precisePointY, Global.sizeX, Global.sizeY,
+                Global.width, Global.height, Global.countIterations(), Global.getSamples(),
+                Global.adaptiveSampling, Global.samplingThreshold, Global.marianiSilver);
+    }
+
+    /**
+     * @param samples           number of samples in pixel, one of 1, 4, 9 or 16
+     * @param adaptiveSampling  if only points differing from neighbours get all
+     *                          samples
+     * @param samplingThreshold difference of neighbours needing all samples
+     * @return the same viewport with given sampling
+     * @throws IllegalArgumentException if the number of samples is not supported
+     */
+    Viewport withSampling(int samples, boolean adaptiveSampling, double samplingThreshold) {
+        return new Viewport(centerX, centerY, sizeX, sizeY, width, height, iterations,
+                samples, adaptiveSampling, samplingThreshold, marianiSilver);
+    }
+
+    /**
+     * @param marianiSilver if the progressive passes are replaced by
+     *                      Mariani-Silver subdivision
+     * @return the same viewport with given algorithm
+     */
+    Viewport withMarianiSilver(boolean marianiSilver) {
+        return new Viewport(centerX, centerY, sizeX, sizeY, width, height, iterations,
+                samples, adaptiveSampling, samplingThreshold, marianiSilver);
+    }
+
+    /**
+     * @param iterations maximal number of iterations of point
+     * @return the same viewport with given number of iterations
+     * @throws IllegalArgumentException if the iterations are not positive
+     */
+    Viewport withIterations(int iterations) {
+        return new Viewport(centerX, centerY, sizeX, sizeY, width, height, iterations,
+                samples, adaptiveSampling, samplingThreshold, marianiSilver);
+    }
+
+    /**
+     * Tests if this viewport differs from the previous one only by a higher
+     * limit of iterations, so the points of the previous one can be continued.
+     *
+     * @param previous the previous viewport
+     * @return true if all parameters but iterations are equal and the
+     * iterations are not lower
+     */
+    boolean raisesIterationsOf(Viewport previous) {
+        return previous != null && iterations >= previous.iterations
+                && centerX.equals(previous.centerX) && centerY.equals(previous.centerY)
+                && sizeX == previous.sizeX && sizeY == previous.sizeY
+                && width == previous.width && height == previous.height
+                && samples == previous.samples && adaptiveSampling == previous.adaptiveSampling
+                && samplingThreshold == previous.samplingThreshold && marianiSilver == previous.marianiSilver;
+    }
+
+    /**
+     * Finds the power of two this viewport is zoomed by from the previous one.
+     *
+     * @param previous the previous viewport
+     * @return exponent of the ratio of sizes of both sectors, zero if it is
+     * not a power of two, the sectors do not differ in size or they differ in
+     * anything but the center, the size and iterations
+     */
+    int scaleExponent(Viewport previous) {
+        if (previous == null || width != previous.width || height != previous.height
+                || samples != previous.samples || adaptiveSampling != previous.adaptiveSampling
+                || samplingThreshold != previous.samplingThreshold || marianiSilver != previous.marianiSilver)
+            return 0;
+        int exponent = Math.getExponent(sizeX) - Math.getExponent(previous.sizeX);
+        if (sizeX != Math.scalb(previous.sizeX, exponent) || sizeY != Math.scalb(previous.sizeY, exponent))
+            return 0;
+        return exponent;
+    }
+
+    /**
+     * Finds the position of the center of the first pixel of this viewport
+     * relative to the center of the first pixel of the previous one. The
+     * distance is measured in pixels of the viewport whose pixels are smaller,
+     * so the pixels of the viewports zoomed by a power of two lie on a common
+     * grid if both coordinates are whole numbers.
+     *
+     * @param previous the previous viewport of the same size of canvas
+     * @return distance in columns and rows
+     */
+    double[] gridOffset(Viewport previous) {
+        double pixelX = Math.min(sizeX, previous.sizeX) / width;
+        double pixelY = Math.min(sizeY, previous.sizeY) / height;
+        double x = centerX.subtract(previous.centerX).doubleValue()
+                + (0.5 - width / 2.0) * (sizeX - previous.sizeX) / width;
+        double y = previous.centerY.subtract(centerY).doubleValue()
+                + (0.5 - height / 2.0) * (sizeY - previous.sizeY) / height;
+        return new double[]{x / pixelX, y / pixelY};
+    }
+
+    /**
+     * Returns the distance under which an orbit is taken as returned to an
+     * already visited point by the cycle detection.
+     * It is a small fraction of pixel, so only points closer to the boundary
+     * than the pixel can resolve may be taken as interior.
+     *
+     * @return tolerance of the cycle detection
+     */
+    double getPeriodicityTolerance() {
+        return Math.min(sizeX / width, sizeY / height) * periodicityScale;
+    }
+
+    /**
+     * @return size of pixel in x axis
+     */
+    double getPixel() {
+        return sizeX / width;
+    }
+
+    /**
+     * Returns precision needed to distinguish pixels of the sector.
+     *
+     * @return math context with sufficient number of digits
+     */
+    MathContext getPrecision() {
+        double pixel = Math.min(sizeX / width, sizeY / height);
+        return new MathContext(Math.max(17, 12 - (int) Math.floor(Math.log10(pixel))));
+    }
+
+    final BigDecimal centerX, centerY;
+    final double pointX, pointY, sizeX, sizeY;
+    final double startPointX, startPointY;
+    final int width, height, iterations, samples;
+    final boolean adaptiveSampling, marianiSilver;
+    final double samplingThreshold;
+
+    private static double periodicityScale = 1e-3;
+}
@@ -0,0 +1,225 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Computes tiles for {@link Coordinator} received over TCP without GUI.
+ * Every connection sends one viewport after another and gets the values of
+ * all its points back. Connections are served at once, each tile is computed
+ * on all cores by {@link Set#renderAside(Viewport)}.
+ * <p>
+ * The protocol of both sides is kept here. A request is the id of tile
+ * followed by the viewport, a response is the id, status and either the
+ * counts and fractions of points by rows or the message of error.
+ * <p>
+ * Usage: <code>Worker [port]</code>, the port is chosen by system if it is
+ * not given and printed to standard output.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class Worker {
+
+    /**
+     * Parses arguments and serves connections until killed.
+     *
+     * @param args port, optional
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length > 1)
+                throw new IllegalArgumentException("Wrong number of arguments");
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+            serve(port);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Worker [port]");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Worker failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Accepts connections and serves each of them in its own thread.
+     * Tiles are computed whole, so they are computed aside from the cache of
+     * tiles.
+     *
+     * @param port port to listen on, zero for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    static void serve(int port) throws IOException {
+        ExecutorService connections = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Listening on port " + server.getLocalPort());
+            System.out.flush();
+            while (true) {
+                Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            }
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    /**
+     * Computes tiles requested by one connection until it is closed.
+     * Invalid viewports are answered by error, the connection stays open.
+     *
+     * @param socket the connection
+     */
+    private static void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                long id;
+                try {
+                    id = in.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                Field field;
+                try {
+                    field = Set.renderAside(readViewport(in));
+                } catch (RuntimeException e) {
+                    writeError(out, id, String.valueOf(e.getMessage()));
+                    continue;
+                }
+                writeResult(out, id, field);
+            }
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends request for tile.
+     *
+     * @param out      stream of connection
+     * @param id       id of tile
+     * @param viewport the tile
+     * @throws IOException if sending fails
+     */
+    static void writeRequest(DataOutputStream out, long id, Viewport viewport) throws IOException {
+        out.writeLong(id);
+        out.writeUTF(viewport.centerX.toString());
+        out.writeUTF(viewport.centerY.toString());
+        out.writeDouble(viewport.sizeX);
+        out.writeDouble(viewport.sizeY);
+        out.writeInt(viewport.width);
+        out.writeInt(viewport.height);
+        out.writeInt(viewport.iterations);
+        out.writeInt(viewport.samples);
+        out.writeBoolean(viewport.adaptiveSampling);
+        out.writeDouble(viewport.samplingThreshold);
+        out.flush();
+    }
+
+    /**
+     * Receives viewport of requested tile, its id is already read.
+     *
+     * @param in stream of connection
+     * @return the viewport
+     * @throws IOException              if receiving fails
+     * @throws IllegalArgumentException if the viewport is not valid
+     */
+    private static Viewport readViewport(DataInputStream in) throws IOException {
+        BigDecimal centerX = new BigDecimal(in.readUTF()), centerY = new BigDecimal(in.readUTF());
+        double sizeX = in.readDouble(), sizeY = in.readDouble();
+        int width = in.readInt(), height = in.readInt(), iterations = in.readInt(), samples = in.readInt();
+        boolean adaptiveSampling = in.readBoolean();
+        double samplingThreshold = in.readDouble();
+        if ((long) width * height > maxPoints)
+            throw new IllegalArgumentException("Tile is too large");
+        return new Viewport(centerX, centerY, sizeX, sizeY, width, height, iterations)
+                .withSampling(samples, adaptiveSampling, samplingThreshold);
+    }
+
+    /**
+     * Sends computed points of tile.
+     *
+     * @param out   stream of connection
+     * @param id    id of tile
+     * @param field computed points
+     * @throws IOException if sending fails
+     */
+    private static void writeResult(DataOutputStream out, long id, Field field) throws IOException {
+        int width = field.getWidth(), height = field.getHeight();
+        int[] counts = new int[width * height];
+        float[] fractions = new float[width * height];
+        field.read(0, 0, width, height, counts, fractions, 0, width);
+        ByteBuffer buffer = ByteBuffer.allocate(counts.length * (Integer.BYTES + Float.BYTES));
+        buffer.asIntBuffer().put(counts);
+        buffer.position(counts.length * Integer.BYTES);
+        buffer.asFloatBuffer().put(fractions);
+
+        out.writeLong(id);
+        out.writeBoolean(true);
+        out.write(buffer.array());
+        out.flush();
+    }
+
+    /**
+     * Sends error instead of tile.
+     *
+     * @param out     stream of connection
+     * @param id      id of tile
+     * @param message description of error
+     * @throws IOException if sending fails
+     */
+    private static void writeError(DataOutputStream out, long id, String message) throws IOException {
+        out.writeLong(id);
+        out.writeBoolean(false);
+        out.writeUTF(message);
+        out.flush();
+    }
+
+    /**
+     * Receives computed points of tile.
+     *
+     * @param in     stream of connection
+     * @param id     id of the requested tile
+     * @param width  width of tile
+     * @param height height of tile
+     * @return computed points
+     * @throws IOException if receiving fails, the response belongs to
+     *                     another tile or the worker failed to compute it
+     */
+    static Field readResult(DataInputStream in, long id, int width, int height) throws IOException {
+        if (in.readLong() != id)
+            throw new IOException("Response to another tile");
+        if (!in.readBoolean())
+            throw new IOException("Worker failed: " + in.readUTF());
+
+        int points = width * height;
+        byte[] bytes = new byte[points * (Integer.BYTES + Float.BYTES)];
+        in.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] counts = new int[points];
+        float[] fractions = new float[points];
+        buffer.asIntBuffer().get(counts);
+        buffer.position(points * Integer.BYTES);
+        buffer.asFloatBuffer().get(fractions);
+
+        Field field = new Field();
+        field.resize(width, height);
+        field.write(0, 0, width, height, counts, fractions, 0, width);
+        return field;
+    }
+
+    private static long maxPoints = 1 << 24;
+}
@@ -0,0 +1,232 @@
+package cz.cuni.mff.mandelbrot;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.*;
+
+/**
+ * Renders frames of video zooming into given point without GUI.
+ * Only keyframes at zooms of powers of two are computed, in twice the size of
+ * video frame. Every frame is resampled from the keyframe with the nearest
+ * lower zoom, its center covered by the next keyframe is resampled from that
+ * one, so no frame needs to be magnified. The frames are written as numbered
+ * PNG files, which can be joined to video for example by
+ * <code>ffmpeg -i frame%05d.png video.mp4</code>.
+ * <p>
+ * Usage: <code>ZoomVideo re im zoom iterations WIDTHxHEIGHT seconds fps directory</code>
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class ZoomVideo {
+
+    /**
+     * Parses arguments and renders the frames.
+     *
+     * @param args target point, final zoom, iterations, size of frames, length
+     *             of video in seconds, frames per second and output directory
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length != 8)
+                throw new IllegalArgumentException("Wrong number of arguments");
+            String[] size = args[4].toLowerCase().split("x");
+            if (size.length != 2)
+                throw new IllegalArgumentException("Size has to be given as WIDTHxHEIGHT");
+            int width = Integer.parseInt(size[0]), height = Integer.parseInt(size[1]);
+            long zoom = Long.parseLong(args[2]);
+            int frames = (int) round(Double.parseDouble(args[5]) * Integer.parseInt(args[6]));
+            if (width < 1 || height < 1 || zoom < 1 || frames < 2)
+                throw new IllegalArgumentException("Size, zoom and number of frames have to be positive");
+            if (zoom >= 1L << MAX_LEVEL)
+                throw new IllegalArgumentException("Zoom has to be lower than 2^" + MAX_LEVEL);
+
+            long start = System.nanoTime();
+            render(args[0], args[1], zoom, Integer.parseInt(args[3]), width, height, frames, Paths.get(args[7]));
+            System.err.printf("Rendered in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: ZoomVideo re im zoom iterations WIDTHxHEIGHT seconds fps directory");
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Rendering failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Renders the frames.
+     * The zoom grows exponentially from one to the final zoom. All keyframes
+     * are computed with the same number of iterations, so their colors match.
+     *
+     * @param re         real part of target point
+     * @param im         imaginary part of target point
+     * @param zoom       zoom of the last frame
+     * @param iterations number of iterations
+     * @param width      width of frame
+     * @param height     height of frame
+     * @param frames     number of frames
+     * @param directory  output directory
+     * @throws IOException if writing fails
+     */
+    static void render(String re, String im, long zoom, int iterations, int width, int height,
+            int frames, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        BigDecimal centerX = new BigDecimal(re.trim()), centerY = new BigDecimal(im.trim());
+        Set set = new Set();
+        set.setAside(true);
+        Palette palette = new Palette(iterations, iterations, 1, 1, 1);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService encoder = Executors.newFixedThreadPool(threads);
+        BlockingQueue<int[]> buffers = new ArrayBlockingQueue<>(threads + 1);
+        for (int k = 0; k <= threads; ++k)
+            buffers.add(new int[width * height]);
+        List<Future<?>> written = new ArrayList<>();
+
+        try {
+            int level = 0;
+            int[] outer = renderKeyframe(set, keyframe(centerX, centerY, 0, iterations, width, height), palette);
+            int[] inner = renderKeyframe(set, keyframe(centerX, centerY, 1, iterations, width, height), palette);
+            for (int f = 0; f < frames; ++f) {
+                double frameZoom = pow(zoom, f / (double) (frames - 1));
+                // the next keyframe has zoom two to the level + 1, which fits in long
+                while (frameZoom >= 2.0 * (1L << level) && level + 1 < MAX_LEVEL) {
+                    ++level;
+                    outer = inner;
+                    inner = renderKeyframe(set, keyframe(centerX, centerY, level + 1, iterations, width, height),
+                            palette);
+                }
+
+                int[] pixels = buffers.take();
+                resample(outer, inner, (1L << level) / frameZoom, width, height, pixels);
+                Path file = directory.resolve(String.format("frame%05d.png", f));
+                written.add(encoder.submit(() -> {
+                    try (PngWriter png = new PngWriter(new BufferedOutputStream(Files.newOutputStream(file)),
+                            width, height)) {
+                        png.writeRows(pixels, 0, height);
+                    } finally {
+                        buffers.put(pixels);
+                    }
+                    return null;
+                }));
+                System.err.printf("\r%d of %d frames", f + 1, frames);
+            }
+            for (Future<?> frame : written)
+                frame.get();
+            System.err.println();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Rendering was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException("Writing of frame failed", e.getCause());
+        } finally {
+            encoder.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates viewport of keyframe in twice the size of frame.
+     *
+     * @param centerX    real part of target point
+     * @param centerY    imaginary part of target point
+     * @param level      the keyframe has zoom two to the level
+     * @param iterations number of iterations
+     * @param width      width of frame
+     * @param height     height of frame
+     * @return the viewport
+     */
+    private static Viewport keyframe(BigDecimal centerX, BigDecimal centerY, int level, int iterations,
+            int width, int height) {
+        double sizeX = Global.sizeOfZoom(1L << level);
+        return new Viewport(centerX, centerY, sizeX, sizeX * height / width, 2 * width, 2 * height, iterations);
+    }
+
+    /**
+     * Computes keyframe and colors it.
+     * Colors do not wrap by the base iterations, which differ by zoom, so all
+     * keyframes share one palette.
+     *
+     * @param set      set computing the keyframe
+     * @param viewport viewport of keyframe
+     * @param palette  colors of points
+     * @return colors of keyframe packed as <code>0xAARRGGBB</code>
+     */
+    private static int[] renderKeyframe(Set set, Viewport viewport, Palette palette) {
+        set.setConstruct(viewport, set.killThreads());
+        int[] colors = new int[viewport.width * viewport.height];
+        Export.color(palette, set.getField(), colors, 0, viewport.height);
+        return colors;
+    }
+
+    /**
+     * Resamples frame from keyframes by bilinear interpolation.
+     *
+     * @param outer  keyframe covering the whole frame
+     * @param inner  keyframe with twice the zoom of the outer one
+     * @param scale  size of pixel of frame in pixels of the outer keyframe
+     *               divided by two, between one half and one
+     * @param width  width of frame
+     * @param height height of frame
+     * @param pixels array for colors of frame
+     */
+    private static void resample(int[] outer, int[] inner, double scale, int width, int height, int[] pixels) {
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int x = 0; x < width; ++x) {
+                // position relative to the center in pixels of the outer keyframe
+                double u = (x + 0.5 - width / 2.0) * 2 * scale;
+                double v = (y + 0.5 - height / 2.0) * 2 * scale;
+                if (abs(u) < width / 2.0 - 1 && abs(v) < height / 2.0 - 1)
+                    pixels[y * width + x] = sample(inner, 2 * u + width - 0.5, 2 * v + height - 0.5, width, height);
+                else
+                    pixels[y * width + x] = sample(outer, u + width - 0.5, v + height - 0.5, width, height);
+            }
+        });
+    }
+
+    /**
+     * Interpolates color of keyframe between its four nearest pixels.
+     *
+     * @param keyframe colors of keyframe
+     * @param u        x coordinate in keyframe
+     * @param v        y coordinate in keyframe
+     * @param width    width of frame, keyframe is twice as wide
+     * @param height   height of frame, keyframe is twice as high
+     * @return the interpolated color
+     */
+    private static int sample(int[] keyframe, double u, double v, int width, int height) {
+        int columns = 2 * width;
+        int i = (int) min(max(floor(u), 0), columns - 2);
+        int j = (int) min(max(floor(v), 0), 2 * height - 2);
+        double s = min(max(u - i, 0), 1), t = min(max(v - j, 0), 1);
+        int c00 = keyframe[j * columns + i], c10 = keyframe[j * columns + i + 1];
+        int c01 = keyframe[(j + 1) * columns + i], c11 = keyframe[(j + 1) * columns + i + 1];
+
+        int color = 0xFF000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            double top = (c00 >> shift & 0xFF) * (1 - s) + (c10 >> shift & 0xFF) * s;
+            double bottom = (c01 >> shift & 0xFF) * (1 - s) + (c11 >> shift & 0xFF) * s;
+            color |= (int) (top * (1 - t) + bottom * t + 0.5) << shift;
+        }
+        return color;
+    }
+
+    // the keyframe with zoom two to this level is the last one fitting in long
+    private static final int MAX_LEVEL = 62;
+}
@@ -13,7 +13,7 @@
  * Also it allows user to control the basic color setting by dragging the
  * sliders.
  * <p>
- * Java version: 11
+ * Java version: 17
  *
  * @author Filip Cizmar
  * @version 1.0
@@ -3,5 +3,9 @@ module zapoctak.k.odevzdani {
     requires javafx.controls;
     requires javafx.graphics;
     requires javafx.fxml;
+    requires static jdk.incubator.vector;
+    requires java.management;
+    requires jdk.jfr;
+    requires jdk.httpserver;
     opens cz.cuni.mff.mandelbrot;
 }
\ No newline at end of file
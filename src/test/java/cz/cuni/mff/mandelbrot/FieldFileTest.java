@@ -0,0 +1,51 @@
+package cz.cuni.mff.mandelbrot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a field file describes the render it was written from.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class FieldFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The viewport read back from the file has the sampling and subdivision
+     * the points were computed with, not the actual ones of {@link Global}.
+     *
+     * @throws IOException if the file cannot be written or read
+     */
+    @Test
+    public void headerKeepsSampling() throws IOException {
+        Viewport viewport = new Viewport(new BigDecimal("-0.75"), new BigDecimal("0.1"), 0.06, 0.04,
+                width, height, 300).withSampling(9, !Global.adaptiveSampling, 0.5).withMarianiSilver(true);
+        Path file = folder.getRoot().toPath().resolve("field" + FieldFile.EXTENSION);
+        try (FieldFile out = FieldFile.create(file, viewport, 100)) {
+            out.write(Set.renderAside(viewport), 0, 0, height);
+        }
+
+        try (FieldFile in = FieldFile.open(file)) {
+            Viewport read = in.getViewport();
+            assertEquals(viewport.samples, read.samples);
+            assertEquals(viewport.adaptiveSampling, read.adaptiveSampling);
+            assertEquals(viewport.samplingThreshold, read.samplingThreshold, 0);
+            assertEquals(viewport.marianiSilver, read.marianiSilver);
+            assertEquals(viewport.iterations, read.iterations);
+            assertEquals(100, in.getBaseIterations());
+        }
+    }
+
+    private static int width = 30, height = 20;
+}
@@ -0,0 +1,35 @@
+package cz.cuni.mff.mandelbrot;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that the probe does not disturb the shown frames.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class IterationProbeTest {
+
+    /**
+     * The probe neither uses the cache of tiles nor records its frame.
+     */
+    @Test
+    public void probeLeavesCacheAndMetrics() {
+        Viewport viewport = new Viewport(new BigDecimal("-0.75"), new BigDecimal("0.1"), 0.05, 0.0375,
+                300, 200, 500);
+        Set.render(viewport);
+        FrameStats frame = RenderMetrics.getLastFrame();
+        TileCache cache = Set.getTileCache();
+        long lookups = cache.getHits() + cache.getMisses();
+
+        IterationProbe.choose(viewport);
+
+        assertSame(frame, RenderMetrics.getLastFrame());
+        assertEquals(lookups, cache.getHits() + cache.getMisses());
+    }
+}
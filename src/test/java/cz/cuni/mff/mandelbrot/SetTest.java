@@ -0,0 +1,214 @@
+package cz.cuni.mff.mandelbrot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares computations reusing state of previous ones with computations from
+ * the beginning. The tests run once without the vector module and once with
+ * it, so the points are computed by both the scalar and the vectorized code.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class SetTest {
+
+    /**
+     * Empties the cache, so no computation takes points from another one.
+     */
+    @Before
+    public void clearCache() {
+        Set.getTileCache().clear();
+    }
+
+    /**
+     * Orbits kept for continuation must not leak into a computation of
+     * another sector.
+     */
+    @Test
+    public void keptOrbitsDoNotChangeNextSector() {
+        Viewport first = viewport("-0.75", "0.1", 0.05, 1000);
+        Viewport second = viewport("-0.7436", "0.1318", 0.002, 1000);
+        Set set = new Set();
+        set.setResumable(true);
+        set.setConstruct(first, set.killThreads());
+        Set.getTileCache().clear();
+        set.setConstruct(second, set.killThreads());
+        Set.getTileCache().clear();
+
+        assertFieldsEqual(Set.render(second), set.getField());
+    }
+
+    /**
+     * Continued orbits give the same values as the computation with the
+     * raised limit from the beginning.
+     */
+    @Test
+    public void resumedEqualsFresh() {
+        Viewport first = viewport("-0.75", "0.1", 0.05, 500);
+        Viewport raised = first.withIterations(2000);
+        Set set = new Set();
+        set.setResumable(true);
+        set.setConstruct(first, set.killThreads());
+        Set.getTileCache().clear();
+        set.setConstructResumed(raised, set.killThreads());
+        Set.getTileCache().clear();
+
+        assertFieldsEqual(Set.render(raised), set.getField());
+    }
+
+    /**
+     * Tiles computed with other parameters of sampling must not be taken from
+     * cache.
+     */
+    @Test
+    public void cachedTilesKeepSampling() {
+        Viewport smooth = viewport("-0.75", "0.1", 0.05, 500);
+        Viewport coarse = smooth.withSampling(4, true, 100);
+        Set.render(smooth);
+        Field cached = Set.render(coarse);
+        Set.getTileCache().clear();
+
+        assertFieldsEqual(Set.render(coarse), cached);
+    }
+
+    /**
+     * Mariani-Silver subdivision gives the same values as the computation of
+     * every point, in a view dominated by the interior and in a view of bands.
+     */
+    @Test
+    public void marianiSilverEqualsBruteForce() {
+        Viewport[] views = {viewport("-0.2", "0", 0.8, 500), viewport("-0.75", "0.1", 0.05, 500)};
+        for (Viewport view : views) {
+            for (int samples : new int[]{1, 4, 9}) {
+                for (boolean adaptive : new boolean[]{false, true}) {
+                    Viewport sampled = view.withSampling(samples, adaptive, 0.25);
+                    Field bruteForce = Set.render(sampled.withMarianiSilver(false));
+                    Set.getTileCache().clear();
+
+                    assertFieldsEqual(bruteForce, Set.render(sampled.withMarianiSilver(true)));
+                    Set.getTileCache().clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Translated points with the computed uncovered strips give the same
+     * values as the computation of the moved sector, for translations in all
+     * directions. The coordinates of points of the moved sector differ in the
+     * last bits, which changes a few chaotic points near the boundary.
+     */
+    @Test
+    public void translatedEqualsFresh() {
+        Viewport start = viewport("-0.75", "0.1", 0.05, 500);
+        int[][] moves = {{17, 0}, {0, -23}, {-31, 12}, {40, -9}, {-5, -7}};
+        for (int[] move : moves) {
+            int dx = move[0], dy = move[1];
+            Set set = new Set();
+            set.setConstruct(start, set.killThreads());
+            Set.getTileCache().clear();
+            Viewport moved = moved(start, dx, dy);
+            set.setConstructTranslated(moved, dx, dy, set.killThreads());
+            Set.getTileCache().clear();
+
+            assertFieldsClose(Set.render(moved), set.getField(), width * height / 1000);
+            Set.getTileCache().clear();
+        }
+    }
+
+    /**
+     * Zoom in and out by two aligned to the grid of the previous sector takes
+     * over the points lying on it and gives the same values as the
+     * computation of the zoomed sector.
+     */
+    @Test
+    public void zoomedEqualsFresh() {
+        Viewport start = viewport("-0.75", "0.1", 0.05, 500);
+        Set set = new Set();
+        set.setResumable(true);
+        set.setConstruct(start, set.killThreads());
+        Set.getTileCache().clear();
+
+        Viewport previous = start;
+        for (double scale : new double[]{0.5, 2}) {
+            Viewport zoomed = aligned(previous, scale);
+            set.setConstructZoomed(zoomed, set.killThreads());
+            Set.getTileCache().clear();
+
+            assertSame(zoomed, set.getReusableViewport());
+            assertFieldsEqual(Set.render(zoomed), set.getField());
+            Set.getTileCache().clear();
+            previous = zoomed;
+        }
+    }
+
+    /**
+     * Points recognized as interior do not count the iterations they did not
+     * compute.
+     */
+    @Test
+    public void interiorIterationsAreNotCounted() {
+        Viewport interior = viewport("-0.2", "0", 0.8, 500).withSampling(1, true, 0.25);
+        Set.render(interior);
+
+        long limit = (long) width * height * interior.iterations;
+        assertTrue(RenderMetrics.getLastFrame().iterations < limit / 10);
+    }
+
+    private static Viewport aligned(Viewport previous, double scale) {
+        Viewport zoomed = new Viewport(previous.centerX, previous.centerY, previous.sizeX * scale,
+                previous.sizeY * scale, width, height, previous.iterations)
+                .withSampling(previous.samples, previous.adaptiveSampling, previous.samplingThreshold);
+        double[] offset = zoomed.gridOffset(previous);
+        double pixelX = Math.min(zoomed.sizeX, previous.sizeX) / width;
+        double pixelY = Math.min(zoomed.sizeY, previous.sizeY) / height;
+        BigDecimal re = zoomed.centerX.add(new BigDecimal((Math.rint(offset[0]) - offset[0]) * pixelX));
+        BigDecimal im = zoomed.centerY.add(new BigDecimal((offset[1] - Math.rint(offset[1])) * pixelY));
+        return new Viewport(re, im, zoomed.sizeX, zoomed.sizeY, width, height, zoomed.iterations)
+                .withSampling(zoomed.samples, zoomed.adaptiveSampling, zoomed.samplingThreshold);
+    }
+
+    private static Viewport moved(Viewport viewport, int dx, int dy) {
+        BigDecimal re = viewport.centerX.add(new BigDecimal(dx * viewport.sizeX / width));
+        BigDecimal im = viewport.centerY.subtract(new BigDecimal(dy * viewport.sizeY / height));
+        return new Viewport(re, im, viewport.sizeX, viewport.sizeY, width, height, viewport.iterations)
+                .withSampling(viewport.samples, viewport.adaptiveSampling, viewport.samplingThreshold);
+    }
+
+    private static Viewport viewport(String re, String im, double size, int iterations) {
+        return new Viewport(new BigDecimal(re), new BigDecimal(im), size, size * 2 / 3, width, height, iterations)
+                .withSampling(4, true, 0.25);
+    }
+
+    private static void assertFieldsEqual(Field expected, Field actual) {
+        int differing = 0;
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                if (Double.compare(expected.get(i, j), actual.get(i, j)) != 0)
+                    ++differing;
+            }
+        }
+        assertEquals("differing points", 0, differing);
+    }
+
+    private static void assertFieldsClose(Field expected, Field actual, int tolerated) {
+        int differing = 0;
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                double value = expected.get(i, j);
+                if (Math.abs(value - actual.get(i, j)) > Math.ulp((float) value) * 4)
+                    ++differing;
+            }
+        }
+        assertTrue("differing points: " + differing, differing <= tolerated);
+    }
+
+    private static int width = 300, height = 200;
+}
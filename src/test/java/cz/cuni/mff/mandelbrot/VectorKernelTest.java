@@ -0,0 +1,63 @@
+package cz.cuni.mff.mandelbrot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the vectorized computation of points with the scalar one.
+ * The tests are skipped unless the vector module is present.
+ *
+ * @author Filip Cizmar
+ * @version 1.0
+ */
+public class VectorKernelTest {
+
+    /**
+     * Skips the tests if the vectorized computation cannot run.
+     */
+    @Before
+    public void requireVectors() {
+        assumeTrue(Set.isVectorModulePresent() && VectorKernel.isAvailable());
+    }
+
+    /**
+     * Points escaping at different iterations, interior points and the tail
+     * not filling the whole vector get the same values as in the scalar
+     * computation.
+     */
+    @Test
+    public void pointsEqualScalar() {
+        Viewport viewport = new Viewport(new BigDecimal("-0.75"), new BigDecimal("0.1"), 0.6, 0.4,
+                width, height, 1000);
+        int count = width * height;
+        double[] x0 = new double[VectorKernel.paddedLength(count)];
+        double[] y0 = new double[x0.length];
+        double[] n = new double[x0.length], nu = new double[x0.length];
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                x0[j * width + i] = ((double) i / width) * viewport.sizeX + viewport.startPointX;
+                y0[j * width + i] = ((double) j / height) * viewport.sizeY - viewport.startPointY;
+            }
+        }
+        VectorKernel.comPoints(x0, y0, count, viewport.iterations, viewport.getPeriodicityTolerance(), n, nu);
+
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                if (Set.ThreadSet.isInBulbs(x0[j * width + i], y0[j * width + i]))
+                    continue;
+                double[] tempData = new double[height];
+                double scalarNu = Set.ThreadSet.comPoint(viewport, i, j, 0, 0, viewport.iterations, tempData);
+                assertEquals("iterations of point " + i + ", " + j, tempData[j], n[j * width + i], 0);
+                assertEquals("fraction of point " + i + ", " + j, scalarNu, nu[j * width + i], 0);
+            }
+        }
+    }
+
+    // odd width, so the points do not fill whole vectors
+    private static int width = 123, height = 41;
+}